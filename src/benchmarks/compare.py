@@ -0,0 +1,76 @@
+#!/usr/bin/env python3
+#
+# Copyright (C) 2022, all rights reserved.
+# Copying content is expressly prohibited without prior written permission of the University or the authors.
+# @author Julien Cassagne <julien.cassagne@polymtl.ca>
+#
+# Compares two JMH result files (-rf json), e.g. before and after a change :
+#   compare.py before.json after.json [--threshold 5]
+# A change is reported as a regression when it is worse by more than the threshold, in percent,
+# and by more than the error of both runs. The exit status is 1 if there is a regression.
+
+import argparse
+import json
+import sys
+
+ALLOC = "gc.alloc.rate.norm"  # Bytes allocated per operation, with -prof gc
+
+
+def load(path):
+    results = {}
+    with open(path) as f:
+        for result in json.load(f):
+            params = ",".join("%s=%s" % (k, v) for k, v in sorted(result.get("params", {}).items()))
+            results[(".".join(result["benchmark"].split(".")[-2:]), params)] = result
+    return results
+
+
+def change(before, after):
+    return 100.0 * (after - before) / before if before else 0.0
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compare two JMH result files")
+    parser.add_argument("before")
+    parser.add_argument("after")
+    parser.add_argument("--threshold", type=float, default=5.0, help="Change in percent reported as a regression (default 5)")
+    args = parser.parse_args()
+
+    before = load(args.before)
+    after = load(args.after)
+    regressions = 0
+    print("%-40s %-30s %14s %14s %9s %14s %9s" % ("benchmark", "params", "before", "after", "change", "alloc/op", "change"))
+    for key in sorted(before.keys() & after.keys()):
+        old, new = before[key], after[key]
+        old_metric, new_metric = old["primaryMetric"], new["primaryMetric"]
+        delta = change(old_metric["score"], new_metric["score"])
+        # Throughput is better higher, times are better lower
+        worse = -delta if old["mode"] == "thrpt" else delta
+        noise = abs(new_metric["score"] - old_metric["score"]) <= (old_metric.get("scoreError") or 0) + (new_metric.get("scoreError") or 0)
+        regressed = worse > args.threshold and not noise
+
+        alloc = ""
+        alloc_delta = ""
+        if ALLOC in old.get("secondaryMetrics", {}) and ALLOC in new.get("secondaryMetrics", {}):
+            old_alloc = old["secondaryMetrics"][ALLOC]["score"]
+            new_alloc = new["secondaryMetrics"][ALLOC]["score"]
+            alloc = "%.0f" % new_alloc
+            alloc_delta = "%+.1f%%" % change(old_alloc, new_alloc)
+            if change(old_alloc, new_alloc) > args.threshold:
+                regressed = True
+
+        regressions += regressed
+        print("%-40s %-30s %14.3f %14.3f %+8.1f%% %14s %9s %s %s" % (key[0], key[1], old_metric["score"], new_metric["score"], delta,
+                                                                    alloc, alloc_delta, new_metric["scoreUnit"], "REGRESSION" if regressed else ""))
+
+    for key in sorted(before.keys() - after.keys()):
+        print("%-40s %-30s only in %s" % (key[0], key[1], args.before))
+    for key in sorted(after.keys() - before.keys()):
+        print("%-40s %-30s only in %s" % (key[0], key[1], args.after))
+    if regressions:
+        print("%d regressions" % regressions)
+    return 1 if regressions else 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.CFG;
+import org.polymtl.codeanalysis.reader.ASTJsonReader;
+import org.polymtl.codeanalysis.reader.CFGJsonReader;
+import org.polymtl.codeanalysis.visitors.ASTtoCFG;
+import org.polymtl.codeanalysis.writer.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Graphs read back from the files written by the tools, json as FormatForDD, json.gz as the parser, bin with -bin
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class GraphReadBenchmark {
+    @Param({"1000", "100000", "2000000", "synthetic-1k"})
+    public String graph;
+    @Param({"json", "json.gz", "bin"})
+    public String format;
+
+    private File astFile;
+    private File cfgFile;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        AST ast = SampleGraphs.ast(SampleGraphs.parseTree(graph));
+        CFG cfg = new ASTtoCFG(ast, new ASTtoCFG.IdContext()).visit();
+        astFile = File.createTempFile("benchmark", ".ast." + format);
+        cfgFile = File.createTempFile("benchmark", ".cfg." + format);
+        switch (format) {
+            case "json":
+                new ASTJsonPrint(ast, astFile).print();
+                new CFGJsonPrint(cfg, cfgFile).print();
+                break;
+            case "json.gz":
+                new ASTJsonGzPrint(ast, astFile).print();
+                new CFGJsonPrint(cfg, new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(cfgFile))))).print();
+                break;
+            default:
+                new ASTBinaryPrint(ast, astFile).print();
+                new CFGBinaryPrint(cfg, cfgFile).print();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        astFile.delete();
+        cfgFile.delete();
+    }
+
+    @Benchmark
+    public AST readAst() throws IOException {
+        return new ASTJsonReader().read(astFile.getPath());
+    }
+
+    @Benchmark
+    public CFG readCfg() throws IOException {
+        return new CFGJsonReader().read(cfgFile.getPath());
+    }
+}
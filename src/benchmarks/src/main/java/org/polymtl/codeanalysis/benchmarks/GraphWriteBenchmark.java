@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.ASTDynamic;
+import org.polymtl.codeanalysis.model.CFG;
+import org.polymtl.codeanalysis.visitors.ASTtoCFG;
+import org.polymtl.codeanalysis.writer.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Resolved AST as written by EvalResolver, CFG as written by FormatForDD, each write replaces the same file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class GraphWriteBenchmark {
+    @Param({"1000", "100000", "2000000", "synthetic-1k"})
+    public String graph;
+    @Param({"json", "bin"})
+    public String format;
+
+    private ASTDynamic ast;
+    private CFG cfg;
+    private File astFile;
+    private File cfgFile;
+
+    @Setup(Level.Trial)
+    public void translate() throws IOException {
+        AST parsed = SampleGraphs.ast(SampleGraphs.parseTree(graph));
+        cfg = new ASTtoCFG(parsed, new ASTtoCFG.IdContext()).visit();
+        ast = new ASTDynamic(parsed);
+        astFile = File.createTempFile("benchmark", ".astdyn." + format);
+        cfgFile = File.createTempFile("benchmark", ".cfg." + format);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        astFile.delete();
+        cfgFile.delete();
+    }
+
+    @Benchmark
+    public void writeAstDynamic() throws Exception {
+        Printer printer = format.equals("bin") ? new ASTDynamicBinaryPrint(ast, astFile) : new ASTDynamicJsonPrint(ast, astFile);
+        printer.print();
+    }
+
+    @Benchmark
+    public void writeCfg() throws Exception {
+        Printer printer = format.equals("bin") ? new CFGBinaryPrint(cfg, cfgFile) : new CFGJsonPrint(cfg, cfgFile);
+        printer.print();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.ASTDynamic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Whole tree imported into a copy of itself, as a resolved payload or an included file, so every id collides
+// and is allocated again, the time per node stays the same from 1k to 2M nodes when the allocation is O(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ImportBenchmark {
+    @Param({"1000", "100000", "2000000"})
+    public String graph;
+
+    private AST ast;
+    private ASTDynamic astDyn;
+    private ASTDynamic target;
+
+    @Setup(Level.Trial)
+    public void translate() throws IOException {
+        ast = SampleGraphs.ast(SampleGraphs.parseTree(graph));
+        astDyn = new ASTDynamic(ast);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        target = null; // Only one copy alive with the 2M nodes graph
+        target = new ASTDynamic(astDyn);
+    }
+
+    @Benchmark
+    public Integer importSubTree() {
+        return target.importSubTree(astDyn, astDyn.getRoot());
+    }
+
+    @Benchmark
+    public Integer importSubGraph() {
+        return target.importSubGraph(ast, ast.getRoot(), new HashMap<>());
+    }
+}
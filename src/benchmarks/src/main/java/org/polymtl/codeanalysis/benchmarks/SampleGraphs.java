@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.benchmarks;
+
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.ParseTree;
+import org.polymtl.codeanalysis.reader.ParseTreeJsonReader;
+import org.polymtl.codeanalysis.visitors.ParseTreeToAST;
+import org.polymtl.codeanalysis.writer.ParseTreeJsonPrint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Parse trees of the benchmarks, the AST and CFG are translated from them
+//   "1000", "100000", ... : synthetic straight-line code of about that many parse tree nodes, same tree for the same size
+//   any other name        : checked-in sample, samples/<name>.json, directory set by -Dbenchmarks.samples
+public final class SampleGraphs {
+    private static final int VARIABLES = 64; // Distinct variables of a synthetic file, the indexer searches them linearly
+
+    private SampleGraphs() {}
+
+    public static ParseTree parseTree(String graph) throws IOException {
+        if(graph.matches("[0-9]+"))
+            return synthetic(Integer.parseInt(graph));
+        String dir = System.getProperty("benchmarks.samples", "samples");
+        return new ParseTreeJsonReader().read(Paths.get(dir, graph + ".json").toString());
+    }
+
+    // Ids and variable index local to the graph, repeated translations give the same AST
+    public static AST ast(ParseTree pt) {
+        return new ParseTreeToAST(pt, new ParseTreeToAST.IdContext()).visit();
+    }
+
+    // $vN = 'literal'; and $vN = $vM . 'literal'; as the parser builds them
+    public static ParseTree synthetic(int nodes) {
+        Random random = new Random(nodes);
+        ParseTree pt = new ParseTree();
+        pt.setFilename("./synthetic/" + nodes + ".php");
+        pt.setRoot(0);
+        pt.setNodeType(0, "Start");
+        int next = 1;
+        int line = 1;
+        while(next < nodes) {
+            int statement = next++;
+            pt.setNodeType(statement, "ExpressionStatement");
+            pt.addEdge(0, statement);
+            int assign = next++;
+            pt.setNodeType(assign, "AssignmentExpression");
+            pt.addEdge(statement, assign);
+
+            next = variable(pt, assign, next, line, random);
+            next = token(pt, assign, next, "Assign", "=", line);
+            if(random.nextInt(3) == 0) {
+                int concat = next++;
+                pt.setNodeType(concat, "AdditiveExpression");
+                pt.addEdge(assign, concat);
+                next = variable(pt, concat, next, line, random);
+                next = token(pt, concat, next, "Dot", ".", line);
+                next = literal(pt, concat, next, line, random);
+            }
+            else
+                next = literal(pt, assign, next, line, random);
+            line++;
+        }
+        return pt;
+    }
+
+    private static int variable(ParseTree pt, int parent, int next, int line, Random random) {
+        int variable = next++;
+        pt.setNodeType(variable, "Variable");
+        pt.addEdge(parent, variable);
+        next = token(pt, variable, next, "Dollar", "$", line);
+        return token(pt, variable, next, "VarName", "v" + random.nextInt(VARIABLES), line);
+    }
+
+    private static int literal(ParseTree pt, int parent, int next, int line, Random random) {
+        StringBuilder image = new StringBuilder("'");
+        for(int i = 8 + random.nextInt(24) ; i > 0 ; i--)
+            image.append((char) ('a' + random.nextInt(26)));
+        return token(pt, parent, next, "StringLiteral", image.append("'").toString(), line);
+    }
+
+    private static int token(ParseTree pt, int parent, int id, String type, String image, int line) {
+        pt.setNodeType(id, type);
+        pt.setNodeImage(id, image);
+        pt.setNodePosition(id, new Integer[]{line, line, 1, 1 + image.length(), id, id});
+        pt.addEdge(parent, id);
+        return id + 1;
+    }
+
+    // Writes a synthetic parse tree, e.g. the checked-in samples : SampleGraphs 1000 samples/synthetic-1k.json
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: SampleGraphs <nodes> <out.json>");
+            System.exit(1);
+        }
+        new ParseTreeJsonPrint(synthetic(Integer.parseInt(args[0])), new File(args[1])).print();
+    }
+}
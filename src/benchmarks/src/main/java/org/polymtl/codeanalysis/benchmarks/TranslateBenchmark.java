@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.CFG;
+import org.polymtl.codeanalysis.model.ParseTree;
+import org.polymtl.codeanalysis.visitors.ASTtoCFG;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Parse tree -> AST and AST -> CFG, with fresh ids as for each file of a run
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class TranslateBenchmark {
+    @Param({"1000", "100000", "2000000", "synthetic-1k"})
+    public String graph;
+
+    private ParseTree pt;
+    private AST ast;
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        pt = SampleGraphs.parseTree(graph);
+        ast = SampleGraphs.ast(pt);
+    }
+
+    @Benchmark
+    public AST parseTreeToAst() {
+        return SampleGraphs.ast(pt);
+    }
+
+    @Benchmark
+    public CFG astToCfg() {
+        return new ASTtoCFG(ast, new ASTtoCFG.IdContext()).visit();
+    }
+}
@@ -18,6 +18,7 @@ import org.polymtl.codeanalysis.writer.*;
 import java.io.*;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,16 +29,48 @@ public class EvalResolver {
 
     private static final EvalExtractor evalExtractor = new EvalExtractor();
     private static final ASTDynMatcher astDynMatcher = new ASTDynMatcher();
-    private static final List<ASTDynamic> parametricMO = new ArrayList<>();
-    private static final List<Integer> parametricMO_n = new ArrayList<>();
-    private static final List<HashMap<Integer, Integer>> parametricMO_iden_n = new ArrayList<>();
-    private static final List<ASTDynamic> identicalMO  = new ArrayList<>();
-    private static final List<Integer> identicalMO_n  = new ArrayList<>();
-    private static final List<Integer> payloadSizes  = new ArrayList<>();
+    private static MOStore moStore = null; // Identical and parametric classes, kept between runs with -mo
+    private static IncrementalCache incremental = null; // Resolution of the files unchanged since the last run, with -inc
+    private static ResolutionJournal journal = null; // Files aggregated so far, replayed by -r after a crash
+    private static final int MO_COMMIT_BATCH = 100; // Files between two commits of a MO store kept with -mo
+    private static int moUncommitted = 0;
     private static final HashMap<Integer, Integer> countPatternsFrag  = new HashMap<>();
     private static final HashMap<Integer, HashSet<String>> countPatternsKits  = new HashMap<>();
     private static int evalSum = 0;
 
+    private static final List<String> fileListEval = new ArrayList<>();
+    private static final List<String> fileListErrorDataflow = new ArrayList<>();
+    private static int evalFound = 0;
+    private static int evalResolved = 0;
+    private static int evalFailDataflow = 0;
+    private static int evalFailParse = 0;
+    private static int evalFailOther = 0;
+    private static int evalFailBudget = 0;
+    private static int fileFound = 0;
+    private static int fileFailed = 0;
+    private static long rewriteSteps = 0;
+
+    // Outcome of the evals of a file, kept by the incremental cache
+    private static final String RESOLVED = "resolved";
+    private static final String BUDGET   = "budget";
+    private static final String PARSE    = "parse";
+    private static final String DATAFLOW = "dataflow";
+    private static final String OTHER    = "other";
+
+    // Outcome of the read/resolve/print stages of one file, aggregated in file list order
+    private static class FileResult {
+        protected String file;
+        protected boolean readFailed = false;
+        protected boolean evalFound = false;
+        protected ASTDynamic dynamicAst = null;
+        protected List<Exception> evalErrors = null;
+        protected String outcome = null; // Report line the eval is counted in
+        protected int iterations = 0;
+        FileResult(String file) {
+            this.file = file;
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         Option option_filelist = Option.builder("f")
                 .longOpt("filelist")
@@ -69,6 +102,72 @@ public class EvalResolver {
                 .hasArg(false)
                 .desc("Debug log")
                 .build();
+        Option option_ddCache = Option.builder("ddc")
+                .longOpt("dd-cache")
+                .required(false)
+                .hasArg(true)
+                .desc("Number of CFG+DD graphs kept in memory (default 16)")
+                .build();
+        Option option_payloadCache = Option.builder("pc")
+                .longOpt("payload-cache")
+                .required(false)
+                .hasArg(true)
+                .desc("Memory of each decoded and parsed payload cache in MB (default 128, 0 disables)")
+                .build();
+        Option option_payloadCacheDir = Option.builder("pcd")
+                .longOpt("payload-cache-dir")
+                .required(false)
+                .hasArg(true)
+                .desc("Directory where payloads evicted from the caches are kept")
+                .build();
+        Option option_budgetTime = Option.builder("bt")
+                .longOpt("budget-time")
+                .required(false)
+                .hasArg(true)
+                .desc("Resolution time of a file in seconds (default 0, unlimited)")
+                .build();
+        Option option_budgetDecoded = Option.builder("bd")
+                .longOpt("budget-decoded")
+                .required(false)
+                .hasArg(true)
+                .desc("Bytes decoded for a file in MB (default 0, unlimited)")
+                .build();
+        Option option_budgetDepth = Option.builder("bp")
+                .longOpt("budget-depth")
+                .required(false)
+                .hasArg(true)
+                .desc("Levels of payloads parsed inside payloads (default 0, unlimited)")
+                .build();
+        Option option_budgetNodes = Option.builder("bn")
+                .longOpt("budget-nodes")
+                .required(false)
+                .hasArg(true)
+                .desc("AST nodes parsed or imported while resolving a file (default 0, unlimited)")
+                .build();
+        Option option_moStore = Option.builder("mo")
+                .longOpt("mo-store")
+                .required(false)
+                .hasArg(true)
+                .desc("Directory of the MO classes kept between runs, files already classified are skipped")
+                .build();
+        Option option_incremental = Option.builder("inc")
+                .longOpt("incremental")
+                .required(false)
+                .hasArg(true)
+                .desc("Directory where the resolution of each file is kept, files unchanged since the last run are not resolved again")
+                .build();
+        Option option_resume = Option.builder("r")
+                .longOpt("resume")
+                .required(false)
+                .hasArg(false)
+                .desc("Resume an interrupted run from the journal of the output directory")
+                .build();
+        Option option_threads = Option.builder("t")
+                .longOpt("threads")
+                .required(false)
+                .hasArg(true)
+                .desc("Number of files resolved in parallel (default 1)")
+                .build();
 
         Options options = new Options();
         options.addOption(option_filelist);
@@ -76,10 +175,32 @@ public class EvalResolver {
         options.addOption(option_inDirDd);
         options.addOption(option_outDir);
         options.addOption(option_debug);
+        options.addOption(option_threads);
+        options.addOption(option_ddCache);
+        options.addOption(option_payloadCache);
+        options.addOption(option_payloadCacheDir);
+        options.addOption(option_budgetTime);
+        options.addOption(option_budgetDecoded);
+        options.addOption(option_budgetDepth);
+        options.addOption(option_budgetNodes);
+        options.addOption(option_moStore);
+        options.addOption(option_incremental);
+        options.addOption(option_resume);
 
         CommandLineParser parser = new DefaultParser();
         try {
             cmdline = parser.parse(options, args);
+            if(cmdline.hasOption("t") && parseInteger(cmdline.getOptionValue("t")) < 1)
+                throw new org.apache.commons.cli.ParseException("Invalid number of threads: " + cmdline.getOptionValue("t"));
+            if(cmdline.hasOption("ddc") && parseInteger(cmdline.getOptionValue("ddc")) < 0)
+                throw new org.apache.commons.cli.ParseException("Invalid dd cache size: " + cmdline.getOptionValue("ddc"));
+            if(cmdline.hasOption("pc") && parseInteger(cmdline.getOptionValue("pc")) < 0)
+                throw new org.apache.commons.cli.ParseException("Invalid payload cache size: " + cmdline.getOptionValue("pc"));
+            for(String budget : new String[]{"bt", "bd", "bp", "bn"})
+                if(cmdline.hasOption(budget) && parseInteger(cmdline.getOptionValue(budget)) < 0)
+                    throw new org.apache.commons.cli.ParseException("Invalid budget: " + cmdline.getOptionValue(budget));
+            if(cmdline.hasOption("inc") && cmdline.hasOption("mo")) // The store would count the unchanged files twice
+                throw new org.apache.commons.cli.ParseException("Options -inc and -mo cannot be used together");
         }
         catch (org.apache.commons.cli.ParseException exp) { // Conflict with ParseException of polymtl
             System.err.println("Wrong arguments.  " + exp.getMessage());
@@ -94,8 +215,23 @@ public class EvalResolver {
         final String inDirDd     = cmdline.getOptionValue("idd");
         final String outDir      = cmdline.getOptionValue("o");
         final boolean debug      = cmdline.hasOption("d");
+        final int threads        = cmdline.hasOption("t") ? parseInteger(cmdline.getOptionValue("t")) : 1;
 
         CustomLogger.setLevel((debug) ? Level.ALL : Level.CONFIG);
+        if(cmdline.hasOption("ddc"))
+            PatternSubstitution.getCfgDDCache().setCapacity(parseInteger(cmdline.getOptionValue("ddc")));
+        if(cmdline.hasOption("pc")) {
+            PatternSubstitution.getDecodedCache().setCapacity((long) parseInteger(cmdline.getOptionValue("pc")) << 20);
+            PatternSubstitution.getParsedCache().setCapacity((long) parseInteger(cmdline.getOptionValue("pc")) << 20);
+        }
+        if(cmdline.hasOption("pcd"))
+            PatternSubstitution.setPayloadSpill(new File(cmdline.getOptionValue("pcd")));
+        PatternSubstitution.setBudget(new ResolutionBudget(
+                cmdline.hasOption("bt") ? parseInteger(cmdline.getOptionValue("bt")) * 1000L : 0,
+                cmdline.hasOption("bd") ? (long) parseInteger(cmdline.getOptionValue("bd")) << 20 : 0,
+                cmdline.hasOption("bp") ? parseInteger(cmdline.getOptionValue("bp")) : 0,
+                cmdline.hasOption("bn") ? parseInteger(cmdline.getOptionValue("bn")) : 0));
+        LOGGER.info("Resolution budget : " + PatternSubstitution.getBudget());
 
         List<String> files           = null;
         List<String>    patternFiles = null;
@@ -108,88 +244,68 @@ public class EvalResolver {
             System.exit(1);
         }
 
-        ASTJsonReader astReader = new ASTJsonReader();
-        List<String> fileListEval = new ArrayList<>();
-        List<String> fileListErrorDataflow = new ArrayList<>();
-        int evalFound = 0;
-        int evalResolved = 0;
-        int evalFailDataflow = 0;
-        int evalFailParse = 0;
-        int evalFailOther = 0;
-        int fileFound = 0;
-        int fileFailed = 0;
-
-
-        for (String file : files) {
-            fileFound += 1;
-            AST ast = null;
-            LOGGER.info("---- Reading " + file + "----");
-            try {
-                ast = astReader.read(inDirAst + file);
-            } catch (Exception e) {
-                LOGGER.severe("Failed to parse AST");
-                fileFailed += 1;
-            }
-            PatternSubstitution resolver = new PatternSubstitution();
-            resolver.visit(ast, file, inDirAst, inDirDd);
-
-            if(resolver.isEvalFound()) {
-                fileListEval.add(file);
-                file = file.replace(".ast.json.gz", "").replace(".ast.json", "");
-                // Print
-                ASTDynamic astSub = resolver.getDynamicAst();
-                try {
-                    File out_file = new File(outDir + "/full/dot/" + file + ".astdyn.dot");
-                    File parentDir = out_file.getAbsoluteFile().getParentFile();
-                    parentDir.mkdirs();
-                    Printer printer = new ASTDynamicDotPrint(astSub, out_file);
-                    printer.print();
-
-                    out_file = new File(outDir + "/full/json/" + file + ".astdyn.json");
-                    parentDir = out_file.getAbsoluteFile().getParentFile();
-                    parentDir.mkdirs();
-                    printer = new ASTDynamicJsonPrint(astSub, out_file);
-                    printer.print();
-                } catch (Exception e) {
-                    LOGGER.severe("Failed to print dynamic AST");
+        moStore = new MOStore(cmdline.hasOption("mo") ? new File(cmdline.getOptionValue("mo")) : null);
+        int listed = files.size();
+        files.removeIf(moStore::isClassified);
+        if(files.size() != listed)
+            LOGGER.info("Skipping " + (listed - files.size()) + " files already in the MO store");
+        File journalFile = new File(outDir, "journal.jsonl");
+        if(cmdline.hasOption("r")) {
+            Set<String> done = new HashSet<>();
+            for(ResolutionJournal.Record record : ResolutionJournal.read(journalFile)) {
+                if(moStore.isClassified(record.file)) { // Committed to the store before the crash
+                    countResult(record);
+                    evalSum += record.evals.size();
                 }
-
-                // Count
-                evalFound++;
-                if (resolver.getEvalErrors().size() != 0) {
-                    boolean data = false;
-                    boolean parse = false;
-                    for (Exception e : resolver.getEvalErrors()) {
-                        if (e instanceof ParseException) {
-                            parse = true;
-                            break;
-                        }
-                    }
-                    for (Exception e : resolver.getEvalErrors()) {
-                        if (e instanceof ASTDataflowException) {
-                            data = true;
-                            break;
-                        }
-                    }
-
-                    if(parse)
-                        evalFailParse++;
-                    else if(data) {
-                        evalFailDataflow++;
-                        fileListErrorDataflow.add(file);
-                    }
-                    else
-                        evalFailOther++;
-                    //continue; // GO TO NEXT EVAL IF NOT RESOLVED - NO PARAM / IDENT / SAVE
+                else {
+                    replayResult(record, outDir);
+                    moStore.addClassified(record.file);
                 }
-                else
-                    evalResolved++;
-
-                ClassifyAndStoreEvals(astSub, outDir, file);
+                done.add(record.file);
+            }
+            moStore.commit();
+            files.removeIf(done::contains);
+            LOGGER.info("Resuming after " + done.size() + " files, " + files.size() + " left");
+        }
+        new File(outDir).mkdirs();
+        journal = new ResolutionJournal(journalFile, cmdline.hasOption("r"));
+        if(cmdline.hasOption("inc"))
+            incremental = new IncrementalCache(new File(cmdline.getOptionValue("inc")),
+                    "budget " + PatternSubstitution.getBudget() + ", iast " + inDirAst + ", idd " + inDirDd);
 
+        ASTJsonReader astReader = new ASTJsonReader();
+        if(threads <= 1) {
+            for (String file : files)
+                aggregateResult(resolveFile(astReader, file, inDirAst, inDirDd, outDir), outDir);
+        }
+        else {
+            // Files are resolved on the pool, results are aggregated in file list order so that
+            // counters, file lists and MO class numbering are the same as in a sequential run
+            LOGGER.info("Resolving with " + threads + " threads");
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            Deque<Future<FileResult>> pending = new ArrayDeque<>();
+            try {
+                for (String file : files) {
+                    pending.add(pool.submit(() -> resolveFile(astReader, file, inDirAst, inDirDd, outDir)));
+                    if(pending.size() >= threads * 4) // Bound the number of resolved ASTs held in memory
+                        aggregateResult(waitResult(pending.poll()), outDir);
+                }
+                while(!pending.isEmpty())
+                    aggregateResult(waitResult(pending.poll()), outDir);
+            } finally {
+                pool.shutdownNow();
             }
         }
 
+        journal.close();
+        LOGGER.info("CFG+DD cache : " + PatternSubstitution.getCfgDDCache());
+        LOGGER.info("Decoded payload cache : " + PatternSubstitution.getDecodedCache());
+        LOGGER.info("Parsed payload cache : " + PatternSubstitution.getParsedCache());
+        if(incremental != null) {
+            LOGGER.info("Incremental cache : " + incremental);
+            incremental.close();
+        }
+
         FileWriter evalListFile = new FileWriter(outDir + File.separator + "list.txt");
         fileListEval.forEach( (file) -> {
             try {
@@ -223,10 +339,15 @@ public class EvalResolver {
         report.add("Eval dataflow error : \t" + evalFailDataflow);
         report.add("Eval parsing error : \t" + evalFailParse);
         report.add("Eval other error : \t" + evalFailOther);
+        report.add("Eval over budget : \t" + evalFailBudget);
         report.add("\n");
+        report.add("Rewrite steps : \t" + rewriteSteps);
         report.add("Total signatures : \t" + evalSum);
-        report.add("Parametric class: \t" + parametricMO_n.size());
-        report.add("Identical class: \t" + identicalMO_n.size());
+        report.add("Parametric class: \t" + moStore.getParametricSize());
+        report.add("Identical class: \t" + moStore.getIdenticalSize());
+        report.add("\n");
+        report.add("Decoded cache : \t" + PatternSubstitution.getDecodedCache());
+        report.add("Parsed cache : \t\t" + PatternSubstitution.getParsedCache());
         report.add("--------- Report ---------");
 
         report.forEach( (line) -> {
@@ -242,17 +363,19 @@ public class EvalResolver {
 
         FileWriter dataClassFile   = new FileWriter(outDir + File.separator + "data_class.json");
         dataClassFile.write("{\n");
+        IntList payloadSizes = moStore.getPayloadSizes();
+        List<HashMap<Integer, Integer>> parametricMO_iden_n = moStore.getParametricIdentical();
         dataClassFile.write("  \"payload_sizes\": [");
         for(int i = 0; i < payloadSizes.size() ; i++)
-            dataClassFile.write(payloadSizes.get(i) + ((i == payloadSizes.size()-1) ? "" : ", "));
+            dataClassFile.write(payloadSizes.getInt(i) + ((i == payloadSizes.size()-1) ? "" : ", "));
         dataClassFile.write("],\n");
         dataClassFile.write("  \"parametric\": [");
-        for(int i = 0; i < parametricMO_n.size() ; i++)
-            dataClassFile.write(parametricMO_n.get(i) + ((i == parametricMO_n.size()-1) ? "" : ", "));
+        for(int i = 0; i < moStore.getParametricSize() ; i++)
+            dataClassFile.write(moStore.getParametricN(i) + ((i == moStore.getParametricSize()-1) ? "" : ", "));
         dataClassFile.write("],\n");
         dataClassFile.write("  \"identical\": [");
-        for(int i = 0; i < identicalMO_n.size() ; i++)
-            dataClassFile.write(identicalMO_n.get(i) + ((i == identicalMO_n.size()-1) ? "" : ", "));
+        for(int i = 0; i < moStore.getIdenticalSize() ; i++)
+            dataClassFile.write(moStore.getIdenticalN(i) + ((i == moStore.getIdenticalSize()-1) ? "" : ", "));
         dataClassFile.write("],\n");
         dataClassFile.write("  \"parametric_identical\": [\n");
         for(int i = 0; i < parametricMO_iden_n.size() ; i++) {
@@ -267,60 +390,254 @@ public class EvalResolver {
         dataClassFile.write("  ]\n");
         dataClassFile.write("}");
         dataClassFile.close();
+        moStore.close();
+
+
+    }
+
+    private static FileResult resolveFile(ASTJsonReader astReader, String file, String inDirAst, String inDirDd, String outDir) {
+        FileResult result = new FileResult(file);
+        if(incremental != null && reuseResolution(result))
+            return result;
+        AST ast = null;
+        LOGGER.info("---- Reading " + file + "----");
+        try {
+            ast = astReader.read(inDirAst + file);
+        } catch (Exception e) {
+            LOGGER.severe("Failed to parse AST");
+            result.readFailed = true;
+        }
+        PatternSubstitution resolver = new PatternSubstitution();
+        resolver.visit(ast, file, inDirAst, inDirDd);
+        result.iterations = resolver.getIterations();
+        if(result.iterations > 0)
+            LOGGER.info("Rewrite steps : " + result.iterations + " (max worklist " + resolver.getMaxWorklist() + ")");
+
+        result.evalFound = resolver.isEvalFound();
+        if(result.evalFound) {
+            file = file.replace(".ast.json.gz", "").replace(".ast.json", "").replace(".ast.bin", "");
+            // Print
+            ASTDynamic astSub = resolver.getDynamicAst();
+            try {
+                File out_file = new File(outDir + "/full/dot/" + file + ".astdyn.dot");
+                File parentDir = out_file.getAbsoluteFile().getParentFile();
+                parentDir.mkdirs();
+                Printer printer = new ASTDynamicDotPrint(astSub, out_file);
+                printer.print();
+
+                out_file = new File(outDir + "/full/json/" + file + ".astdyn.json");
+                parentDir = out_file.getAbsoluteFile().getParentFile();
+                parentDir.mkdirs();
+                printer = new ASTDynamicJsonPrint(astSub, out_file);
+                printer.print();
+            } catch (Exception e) {
+                LOGGER.severe("Failed to print dynamic AST");
+            }
+            result.dynamicAst = astSub;
+            result.evalErrors = resolver.getEvalErrors();
+            result.outcome = outcome(result.evalErrors);
+        }
+        if(incremental != null) {
+            List<String> dependencies = new ArrayList<>();
+            dependencies.add(inDirAst + result.file);
+            dependencies.addAll(resolver.getDependencies());
+            try {
+                incremental.store(result.file, dependencies, result.readFailed, result.evalFound, result.outcome,
+                        result.iterations, result.dynamicAst);
+            } catch (IOException e) {
+                LOGGER.warning("Cannot keep the resolution of " + result.file + " : " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // Result of the last run, the printed dynamic AST is the one left in the output directory
+    private static boolean reuseResolution(FileResult result) {
+        IncrementalCache.Entry entry = incremental.lookup(result.file);
+        if(entry == null)
+            return false;
+        try {
+            if(entry.evalFound)
+                result.dynamicAst = incremental.readAst(entry);
+        } catch (IOException e) {
+            LOGGER.warning("Cannot read the resolution of " + result.file + " : " + e.getMessage());
+            return false;
+        }
+        LOGGER.info("---- Unchanged " + result.file + "----");
+        result.readFailed = entry.readFailed;
+        result.evalFound = entry.evalFound;
+        result.outcome = entry.outcome;
+        result.iterations = entry.iterations;
+        return true;
+    }
 
+    // First kind of error in this order : over budget, parsing, dataflow, other
+    private static String outcome(List<Exception> evalErrors) {
+        if(evalErrors.size() == 0)
+            return RESOLVED;
+        for (Exception e : evalErrors)
+            if (e instanceof BudgetExceededException)
+                return BUDGET;
+        for (Exception e : evalErrors)
+            if (e instanceof ParseException)
+                return PARSE;
+        for (Exception e : evalErrors)
+            if (e instanceof ASTDataflowException)
+                return DATAFLOW;
+        return OTHER;
+    }
 
+    private static void aggregateResult(FileResult result, String outDir) throws IOException {
+        ResolutionJournal.Record record = new ResolutionJournal.Record(result.file, result.readFailed, result.evalFound,
+                result.outcome, result.iterations);
+        if(countResult(record))
+            ClassifyAndStoreEvals(result.dynamicAst, outDir, fileName(result.file), record);
+        journal.append(record); // Only once its evals are in the store
+        moStore.addClassified(result.file);
+        if(moStore.isPersistent() && ++moUncommitted >= MO_COMMIT_BATCH) {
+            journal.sync(); // The store never holds a file missing from the journal, for -r
+            moStore.commit();
+            moUncommitted = 0;
+        }
+    }
+
+    // Same counters, file lists and MO classes as when the file was aggregated
+    private static void replayResult(ResolutionJournal.Record record, String outDir) throws IOException {
+        countResult(record);
+        for(long[] eval : record.evals) {
+            evalSum += 1;
+            moStore.addPayloadSize((int) eval[0]);
+            int id_iden = (int) eval[1];
+            if(id_iden == moStore.getIdenticalSize())
+                moStore.addIdentical(eval[2], readRepresentative(outDir+"/MO/ident/"+id_iden+"/1.astdyn.json"));
+            moStore.incrementIdentical(id_iden);
+            int id_param = (int) eval[3];
+            if(id_param == moStore.getParametricSize()) {
+                ASTDynamic asttmp = readRepresentative(outDir+"/MO/param/"+id_param+"/1.astdyn.json");
+                asttmp.clearImages();
+                moStore.addParametric(eval[4], asttmp);
+            }
+            moStore.incrementParametric(id_param);
+            moStore.incrementParametricIdentical(id_param, id_iden);
+        }
+    }
+
+    private static ASTDynamic readRepresentative(String file) throws IOException {
+        try {
+            return new ASTDynamicJsonReader().read(file);
+        } catch (IOException | RuntimeException e) {
+            throw new CodeAnalysisException("Cannot resume, MO class missing : " + file + " - " + e.getMessage());
+        }
+    }
+
+    // True if the file has an eval to classify
+    private static boolean countResult(ResolutionJournal.Record record) {
+        fileFound += 1;
+        rewriteSteps += record.iterations;
+        if(record.readFailed)
+            fileFailed += 1;
+        if(!record.evalFound)
+            return false;
+
+        fileListEval.add(record.file);
+
+        // Count
+        evalFound++;
+        switch (record.outcome) {
+            case RESOLVED:
+                evalResolved++;
+                break;
+            case BUDGET:
+                evalFailBudget++;
+                break;
+            case PARSE:
+                evalFailParse++;
+                break;
+            case DATAFLOW:
+                evalFailDataflow++;
+                fileListErrorDataflow.add(fileName(record.file));
+                break;
+            default:
+                evalFailOther++;
+        }
+        //continue; // GO TO NEXT EVAL IF NOT RESOLVED - NO PARAM / IDENT / SAVE
+        return true;
+    }
+
+    private static String fileName(String file) {
+        return file.replace(".ast.json.gz", "").replace(".ast.json", "").replace(".ast.bin", "");
+    }
+
+    private static FileResult waitResult(Future<FileResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeAnalysisException("Interrupted while resolving files");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if(e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new CodeAnalysisException(e.getCause().getMessage());
+        }
+    }
+
+    private static int parseInteger(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
-    private static void ClassifyAndStoreEvals(ASTDynamic astSub, String outDir, String file) {
+    private static void ClassifyAndStoreEvals(ASTDynamic astSub, String outDir, String file, ResolutionJournal.Record record) throws IOException {
         evalExtractor.extract(astSub);
         for(int i = 0 ; i < evalExtractor.getEvalList().size() ; i++) {
             evalSum += 1;
             ASTDynamic extractedEval = evalExtractor.getEvalList().get(i);
-            payloadSizes.add(evalExtractor.getPayloadSize(i));
+            moStore.addPayloadSize(evalExtractor.getPayloadSize(i));
             // Look for identical
             boolean match = false;
             int id_iden = -1;
-            for(int j = 0; j < identicalMO.size() ; j++) {
-                if(astDynMatcher.match(extractedEval, identicalMO.get(j)) == ASTDynMatcher.TYPE.IDENTICAL) {
+            long hash = astDynMatcher.hash(extractedEval);
+            for(int j : moStore.getIdenticalCandidates(hash)) { // Same hash, confirm to rule out a collision
+                if(astDynMatcher.match(extractedEval, moStore.getIdentical(j)) == ASTDynMatcher.TYPE.IDENTICAL) {
                     match = true;
-                    identicalMO_n.set(j, identicalMO_n.get(j)+1);
-                    WriteAstDyn(outDir+"/MO/ident/"+j+"/", identicalMO_n.get(j).toString(), extractedEval);
+                    WriteAstDyn(outDir+"/MO/ident/"+j+"/", String.valueOf(moStore.incrementIdentical(j)), extractedEval);
                     id_iden = j;
                     break;
                 }
             }
             if(!match) {
                 ASTDynamic asttmp= new ASTDynamic(extractedEval);
-                id_iden = identicalMO_n.size();
-                identicalMO.add(asttmp);
-                identicalMO_n.add(1);
-                WriteAstDyn(outDir+"/MO/ident/"+(identicalMO_n.size()-1)+"/", "1", asttmp);
+                id_iden = moStore.addIdentical(hash, asttmp);
+                moStore.incrementIdentical(id_iden);
+                WriteAstDyn(outDir+"/MO/ident/"+id_iden+"/", "1", asttmp);
             }
 
             // Look for parametric
             match = false;
             int id_param = -1;
-            for(int j = 0; j < parametricMO.size() ; j++) {
-                if(astDynMatcher.match(extractedEval, parametricMO.get(j)) != ASTDynMatcher.TYPE.DIFFERENT) {
+            long shapeHash = astDynMatcher.shapeHash(extractedEval);
+            for(int j : moStore.getParametricCandidates(shapeHash)) {
+                if(astDynMatcher.match(extractedEval, moStore.getParametric(j)) != ASTDynMatcher.TYPE.DIFFERENT) {
                     match = true;
-                    parametricMO_n.set(j, parametricMO_n.get(j)+1);
-                    WriteAstDyn(outDir+"/MO/param/"+j+"/", parametricMO_n.get(j).toString(), extractedEval);
+                    WriteAstDyn(outDir+"/MO/param/"+j+"/", String.valueOf(moStore.incrementParametric(j)), extractedEval);
                     id_param = j;
                     break;
                 }
             }
             if(!match) {
                 ASTDynamic asttmp= new ASTDynamic(extractedEval);
-                id_param = parametricMO_n.size();
-                parametricMO.add(asttmp);
-                parametricMO_n.add(1);
-                parametricMO_iden_n.add(new HashMap<>());
-                WriteAstDyn(outDir+"/MO/param/"+(parametricMO_n.size()-1)+"/", "1", asttmp);
-                asttmp.getImageTable().clear();
+                WriteAstDyn(outDir+"/MO/param/"+moStore.getParametricSize()+"/", "1", asttmp);
+                asttmp.clearImages();
+                id_param = moStore.addParametric(shapeHash, asttmp);
+                moStore.incrementParametric(id_param);
             }
 
-            int old_value = parametricMO_iden_n.get(id_param).getOrDefault(id_iden, 0);
-            parametricMO_iden_n.get(id_param).put(id_iden, old_value+1);
+            moStore.incrementParametricIdentical(id_param, id_iden);
+            record.addEval(evalExtractor.getPayloadSize(i), id_iden, hash, id_param, shapeHash);
 
 
 
@@ -0,0 +1,19 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.exceptions;
+
+public class BudgetExceededException extends CodeAnalysisException {
+    private static final long serialVersionUID = 1L;
+    private final String budget;
+    public BudgetExceededException(String budget, String errorMessage) {
+        super(errorMessage);
+        this.budget = budget;
+    }
+    public String getBudget() {
+        return budget;
+    }
+}
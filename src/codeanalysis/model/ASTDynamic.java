@@ -78,8 +78,7 @@ public class ASTDynamic extends AST {
             return;
         if(parentNodeId == defsInt.UNDEF_VAL || childNodeId == defsInt.UNDEF_VAL)
             throw new ASTJsonException("Undefined edge.");
-        Graph.addEdge(childNodeId, parentNodeId, edgeDynamicResolution);
-        Graph.addEdge(parentNodeId, childNodeId, edgeDynamicResolutionRev);
+        Graph.addEdge(parentNodeId, childNodeId, edgeDynamicResolution, edgeDynamicResolutionRev);
     }
 
     public List<Integer> getDataflowResolution(Integer nodeId) {
@@ -103,8 +102,7 @@ public class ASTDynamic extends AST {
             return;
         if(parentNodeId == defsInt.UNDEF_VAL || childNodeId == defsInt.UNDEF_VAL)
             throw new ASTJsonException("Undefined edge.");
-        Graph.addEdge(childNodeId, parentNodeId, edgeDataflowResolution);
-        Graph.addEdge(parentNodeId, childNodeId, edgeDataflowResolutionRev);
+        Graph.addEdge(parentNodeId, childNodeId, edgeDataflowResolution, edgeDataflowResolutionRev);
     }
 
     public List<Integer> getParseEdge(Integer nodeId) {
@@ -126,8 +124,7 @@ public class ASTDynamic extends AST {
             return;
         if(parentNodeId == defsInt.UNDEF_VAL || childNodeId == defsInt.UNDEF_VAL)
             throw new ASTJsonException("Undefined edge.");
-        Graph.addEdge(childNodeId, parentNodeId, edgeParse);
-        Graph.addEdge(parentNodeId, childNodeId, edgeParseRev);
+        Graph.addEdge(parentNodeId, childNodeId, edgeParse, edgeParseRev);
     }
 
     public String getEvalString(Integer nodeId) {
@@ -36,8 +36,10 @@ public class CFG extends GraphIndexedVariable {
         this.astNodePtr         = new HashMap<>(copyFrom.astNodePtr);
         this.cfgNodePtr         = new HashMap<>(copyFrom.cfgNodePtr);
         this.funcEntryNode      = new HashMap<>(copyFrom.funcEntryNode);
-        this.funcCallArgList    = new HashMap<>(copyFrom.funcCallArgList);
-        this.funcDefParamList   = new HashMap<>(copyFrom.funcDefParamList);
+        for(Integer nodeId : copyFrom.funcCallArgList.keySet())
+            this.funcCallArgList.put(nodeId, new ArrayList<>(copyFrom.funcCallArgList.get(nodeId)));
+        for(Integer nodeId : copyFrom.funcDefParamList.keySet())
+            this.funcDefParamList.put(nodeId, new ArrayList<>(copyFrom.funcDefParamList.get(nodeId)));
     }
 
     public Integer getNodeCfgPtr(Integer astNodeId) {
@@ -140,12 +142,11 @@ public class CFG extends GraphIndexedVariable {
     }
 
     public Integer importSubGraph(CFG srcGraph, Integer rootId) {
-        return importSubGraph(srcGraph, rootId, new ArrayList<>());
+        return importSubGraph(srcGraph, rootId, new HashSet<>());
     }
-    private Integer importSubGraph(CFG srcGraph, Integer rootId, List<Integer> imported) {
-        if(imported.contains(rootId))
+    private Integer importSubGraph(CFG srcGraph, Integer rootId, Set<Integer> imported) {
+        if(!imported.add(rootId))
             return null;
-        imported.add(rootId);
         Integer newNode = rootId;
         if(this.getType(newNode) != null) {
             LOGGER.finer("Create new node while importing a graph"); // Cause link ast_ptr to break - dd may fail
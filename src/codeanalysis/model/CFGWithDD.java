@@ -22,6 +22,7 @@ public class CFGWithDD extends CFG {
     protected Map<Integer, List<Integer>> cmdPropagPred = new HashMap<>();
 
     public CFGWithDD(){super();}
+    public CFGWithDD(CFG copyFrom){super(copyFrom);}
     public CFGWithDD(CFGWithDD copyFrom){
         super(copyFrom);
 
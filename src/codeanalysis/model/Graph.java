@@ -8,6 +8,8 @@ package org.polymtl.codeanalysis.model;
 
 import org.polymtl.codeanalysis.exceptions.ASTJsonException;
 import org.polymtl.codeanalysis.util.CustomLogger;
+import org.polymtl.codeanalysis.util.IntHashMap;
+import org.polymtl.codeanalysis.util.IntList;
 
 import java.util.*;
 import java.util.logging.Logger;
@@ -17,23 +19,29 @@ public abstract class Graph implements defsInt {
 
     protected String                        filename            = null;
     protected Integer                       rootId              = UNDEF_VAL;
-    protected Map<Integer, List<Integer>>   predTable           = new HashMap<>();
-    protected Map<Integer, List<Integer>>   succTable           = new HashMap<>();
-    protected Map<Integer, String>          nodeTypeTable       = new HashMap<>();
-    protected Map<Integer, String>          nodeImageTable      = new HashMap<>();
-    protected Map<Integer, Integer[]>       nodePositionTable   = new HashMap<>();
+    protected IntHashMap<List<Integer>>     predTable           = new IntHashMap<>();
+    protected IntHashMap<List<Integer>>     succTable           = new IntHashMap<>();
+    protected IntHashMap<String>            nodeTypeTable       = new IntHashMap<>();
+    protected IntHashMap<String>            nodeImageTable      = new IntHashMap<>();
+    protected IntHashMap<Integer[]>         nodePositionTable   = new IntHashMap<>();
+    protected IntHashMap<byte[]>            nodeBytesTable      = new IntHashMap<>(); // Binary images, hex string only when read as image
+    private   Integer                       maxNodeId           = null;  // Highest key of nodeTypeTable
+    private   boolean                       maxNodeIdStale      = false; // Highest node deleted, recompute on demand
 
     public Graph() {super();}
     public Graph(Graph copyFrom) {
         for(Integer nodeId : copyFrom.predTable.keySet())
-            this.predTable.put(nodeId, new ArrayList<>(copyFrom.predTable.get(nodeId)));
+            this.predTable.put(nodeId, new IntList(copyFrom.predTable.get(nodeId)));
         for(Integer nodeId : copyFrom.succTable.keySet())
-            this.succTable.put(nodeId, new ArrayList<>(copyFrom.succTable.get(nodeId)));
+            this.succTable.put(nodeId, new IntList(copyFrom.succTable.get(nodeId)));
         this.rootId             = copyFrom.rootId;
         this.filename           = copyFrom.filename;
-        this.nodeTypeTable      = new HashMap<>(copyFrom.nodeTypeTable);
-        this.nodeImageTable     = new HashMap<>(copyFrom.nodeImageTable);
-        this.nodePositionTable  = new HashMap<>(copyFrom.nodePositionTable);
+        this.nodeTypeTable      = new IntHashMap<>(copyFrom.nodeTypeTable);
+        this.nodeImageTable     = new IntHashMap<>(copyFrom.nodeImageTable);
+        this.nodePositionTable  = new IntHashMap<>(copyFrom.nodePositionTable);
+        this.nodeBytesTable     = new IntHashMap<>(copyFrom.nodeBytesTable);
+        this.maxNodeId          = copyFrom.maxNodeId;
+        this.maxNodeIdStale     = copyFrom.maxNodeIdStale;
     }
 
 
@@ -44,7 +52,41 @@ public abstract class Graph implements defsInt {
         return nodeTypeTable.get(id);
     }
     public String getImage(int id) {
-        return nodeImageTable.getOrDefault(id, null);
+        String image = nodeImageTable.getOrDefault(id, null);
+        if(image == null && nodeBytesTable.containsKey(id))
+            return encodeHex(nodeBytesTable.get(id));
+        return image;
+    }
+    public byte[] getBytes(int id) {
+        return nodeBytesTable.get(id);
+    }
+    // Raw bytes if the node has binary image, else the image, for the writers
+    public Object getImageOrBytes(int id) {
+        byte[] bytes = nodeBytesTable.get(id);
+        return (bytes != null) ? bytes : nodeImageTable.get(id);
+    }
+    public boolean hasImage(int id) {
+        return nodeBytesTable.get(id) != null || nodeImageTable.get(id) != null;
+    }
+    // Same as getImage(id).equals(other.getImage(otherId)), without encoding binary images
+    public boolean sameImage(int id, Graph other, int otherId) {
+        byte[] bytes = nodeBytesTable.get(id);
+        byte[] otherBytes = other.nodeBytesTable.get(otherId);
+        if(bytes != null && otherBytes != null)
+            return Arrays.equals(bytes, otherBytes);
+        if(bytes == null && otherBytes == null)
+            return Objects.equals(nodeImageTable.get(id), other.nodeImageTable.get(otherId));
+        return (bytes != null) ? isHex(other.nodeImageTable.get(otherId), bytes) : isHex(nodeImageTable.get(id), otherBytes);
+    }
+    // Same as getImage(id).hashCode(), 0 without image
+    public int imageHashCode(int id) {
+        byte[] bytes = nodeBytesTable.get(id);
+        if(bytes == null)
+            return Objects.hashCode(nodeImageTable.get(id));
+        int hash = 0;
+        for(byte b : bytes)
+            hash = 31 * (31 * hash + HEX_DIGITS[(b >> 4) & 0xF]) + HEX_DIGITS[b & 0xF];
+        return hash;
     }
     public List<Integer> getChildren(int id) {
         return succTable.getOrDefault(id, new ArrayList<>());
@@ -61,31 +103,38 @@ public abstract class Graph implements defsInt {
     public Map<Integer, String> getTypeTable() { return nodeTypeTable;}
     public Map<Integer, String> getImageTable() { return nodeImageTable;}
     public Integer getNextNodeId() {
-        if(nodeImageTable.size() == 0)
+        if(nodeImageTable.size() == 0 && nodeBytesTable.size() == 0)
             return 0;
-        return Collections.max(nodeTypeTable.keySet())+1;
+        if(maxNodeId == null || maxNodeIdStale) {
+            maxNodeId = Collections.max(nodeTypeTable.keySet());
+            maxNodeIdStale = false;
+        }
+        return maxNodeId+1;
     }
 
 
 
-    static void addEdge(Integer node1, Integer node2, Map<Integer, List<Integer>> table) {
-        if(table.containsKey(node2)) {
-            if (table.get(node2).contains(node1))
-                throw new ASTJsonException("Duplicate ast edge ' : " + node2 + '-' + node1);
-            table.get(node2).add(node1);
-        }
-        else {
-            table.put(node2, new ArrayList<>());
-            table.get(node2).add(node1);
-        }
+    // Edge stored in both tables, the duplicate check scans the shorter list : a root with many children is not scanned
+    // for each new child, which has no parent yet
+    static void addEdge(Integer parentNodeId, Integer childNodeId, Map<Integer, List<Integer>> succ, Map<Integer, List<Integer>> pred) {
+        List<Integer> children = succ.get(parentNodeId);
+        List<Integer> parents = pred.get(childNodeId);
+        if(children != null && parents != null
+                && (children.size() <= parents.size() ? children.contains(childNodeId) : parents.contains(parentNodeId)))
+            throw new ASTJsonException("Duplicate ast edge ' : " + parentNodeId + '-' + childNodeId);
+        if(children == null)
+            succ.put(parentNodeId, children = new IntList());
+        children.add(childNodeId);
+        if(parents == null)
+            pred.put(childNodeId, parents = new IntList());
+        parents.add(parentNodeId);
     }
     public void addEdge(Integer parentNodeId, Integer childNodeId) {
         if(parentNodeId == null || childNodeId == null)
             return;
         if(parentNodeId == defsInt.UNDEF_VAL || childNodeId == defsInt.UNDEF_VAL)
             throw new ASTJsonException("Undefined edge.");
-        addEdge(childNodeId, parentNodeId, succTable);
-        addEdge(parentNodeId, childNodeId, predTable);
+        addEdge(parentNodeId, childNodeId, succTable, predTable);
     }
     public void removeEdge(Integer parentNodeId, Integer childNodeId) {
         if(parentNodeId == null || childNodeId == null)
@@ -110,9 +159,12 @@ public abstract class Graph implements defsInt {
     }
 
     public void deleteNode(Integer astNodeId) {
+        if(astNodeId.equals(maxNodeId))
+            maxNodeIdStale = true;
         nodeTypeTable.remove(astNodeId);
         nodePositionTable.remove(astNodeId);
         nodeImageTable.remove(astNodeId);
+        nodeBytesTable.remove(astNodeId);
         if(succTable.get(astNodeId) != null)
             for(Integer node : succTable.get(astNodeId))
                 predTable.get(node).remove(astNodeId);
@@ -142,12 +194,11 @@ public abstract class Graph implements defsInt {
     }
 
     public Integer importSubGraph(Graph srcGraph, Integer rootId, Map<Integer, Integer> dd) {
-        return importSubGraph(srcGraph, rootId, dd, new ArrayList<>());
+        return importSubGraph(srcGraph, rootId, dd, new HashSet<>());
     }
-    public Integer importSubGraph(Graph srcGraph, Integer rootId, Map<Integer, Integer> dd, List<Integer> imported) {
-        if(imported.contains(rootId))
+    public Integer importSubGraph(Graph srcGraph, Integer rootId, Map<Integer, Integer> dd, Set<Integer> imported) {
+        if(!imported.add(rootId))
             return null;
-        imported.add(rootId);
         Integer newNode = rootId;
         if(this.getType(newNode) != null) {
             LOGGER.finer("Create new node while importing a tree"); // Cause link pt_ptr, ast_ptr to break - cfg may fail
@@ -172,19 +223,53 @@ public abstract class Graph implements defsInt {
 
     public void copyNode(Integer dstNodeId, Graph srcGraph, Integer srcNodeId) {
         this.setNodeType(dstNodeId, srcGraph.getType(srcNodeId));
-        if(srcGraph.getImage(srcNodeId) != null)
+        if(srcGraph.getBytes(srcNodeId) != null)
+            this.setNodeBytes(dstNodeId, srcGraph.getBytes(srcNodeId));
+        else if(srcGraph.getImage(srcNodeId) != null)
             this.setNodeImage(dstNodeId, srcGraph.getImage(srcNodeId));
         if(srcGraph.getPositions(srcNodeId) != null)
             this.setNodePosition(dstNodeId, srcGraph.getPositions(srcNodeId));
     }
 
     public String setNodeType(Integer nodeId, String parType) {
+        if(maxNodeId == null || nodeId > maxNodeId) {
+            maxNodeId = nodeId;
+            maxNodeIdStale = false;
+        }
         return nodeTypeTable.put(nodeId, parType);
     }
     public Integer[] setNodePosition(Integer nodeId, Integer[] pos) {
         return nodePositionTable.put(nodeId, pos);
     }
     public String setNodeImage(Integer nodeId, String token) {
+        nodeBytesTable.remove(nodeId);
         return nodeImageTable.put(nodeId, token);
     }
+    // Shared, not copied: the bytes must not be modified afterwards
+    public void setNodeBytes(Integer nodeId, byte[] bytes) {
+        nodeImageTable.remove(nodeId);
+        nodeBytesTable.put(nodeId, bytes);
+    }
+    public void clearImages() {
+        nodeImageTable.clear();
+        nodeBytesTable.clear();
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    public static String encodeHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0 ; i < bytes.length ; i++) {
+            hex[2*i]   = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2*i+1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+    private static boolean isHex(String image, byte[] bytes) {
+        if(image == null || image.length() != bytes.length * 2)
+            return false;
+        for(int i = 0 ; i < bytes.length ; i++)
+            if(image.charAt(2*i) != HEX_DIGITS[(bytes[i] >> 4) & 0xF] || image.charAt(2*i+1) != HEX_DIGITS[bytes[i] & 0xF])
+                return false;
+        return true;
+    }
 }
@@ -8,7 +8,6 @@ package org.polymtl.codeanalysis.reader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONTokener;
 import org.polymtl.codeanalysis.model.*;
 import org.polymtl.codeanalysis.exceptions.ASTJsonException;
 
@@ -18,11 +17,18 @@ import java.io.IOException;
 public class ASTJsonReader extends GraphJsonReader {
 
     public AST read(String filename) throws IOException {
+        if(GraphBinaryReader.isBinary(filename)) {
+            AST graph = new AST();
+            read_binary(graph, filename, array -> read_line(graph, array));
+            if(graph.getRoot() == UNDEF_VAL)
+                throw new ASTJsonException("No node root set");
+            return graph;
+        }
         return this.read(this.read_file(filename));
     }
     public AST read(BufferedReader reader) throws IOException, JSONException {
         AST graph = new AST();
-        JSONTokener jsonparser;
+        LineRecordScanner scanner = new LineRecordScanner();
         JSONArray array;
         String line = reader.readLine();
         while (line != null ) {
@@ -33,10 +39,9 @@ public class ASTJsonReader extends GraphJsonReader {
             if( line.equals("]") )
                 break;
 
-            jsonparser = new JSONTokener(line);
-            array = new JSONArray(jsonparser);
+            array = read_record(graph, scanner, line);
 
-            if(!read_line(graph, array))
+            if(array != null && !read_line(graph, array))
                 throw new ASTJsonException("Unknown line type : " + line);
 
             line = reader.readLine();
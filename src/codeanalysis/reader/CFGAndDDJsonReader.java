@@ -8,7 +8,6 @@ package org.polymtl.codeanalysis.reader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONTokener;
 import org.polymtl.codeanalysis.exceptions.*;
 import org.polymtl.codeanalysis.model.*;
 
@@ -24,11 +23,23 @@ public class CFGAndDDJsonReader extends CFGJsonReader implements defsInt {
         read(filename_dd);
         return graph;
     }
+    // DD read on top of a CFG already in memory, the CFG is copied
+    public CFGWithDD read_dd(CFG cfg, String filename_dd) throws IOException, JSONException {
+        graph = new CFGWithDD(cfg);
+        read(filename_dd);
+        return graph;
+    }
     public CFGWithDD read(String filename) throws IOException {
+        if(GraphBinaryReader.isBinary(filename)) {
+            read_binary(graph, filename, array -> read_line(graph, array));
+            if(graph.getRoot() == UNDEF_VAL)
+                throw new ASTJsonException("No node root set");
+            return graph;
+        }
         return this.read(this.read_file(filename));
     }
     public CFGWithDD read(BufferedReader reader) throws IOException, JSONException {
-        JSONTokener jsonparser;
+        LineRecordScanner scanner = new LineRecordScanner();
         JSONArray array;
         String line = reader.readLine();
         while (line != null ) {
@@ -39,10 +50,9 @@ public class CFGAndDDJsonReader extends CFGJsonReader implements defsInt {
             if( line.equals("]") )
                 break;
 
-            jsonparser = new JSONTokener(line);
-            array = new JSONArray(jsonparser);
+            array = read_record(graph, scanner, line);
 
-            if(!read_line(graph, array))
+            if(array != null && !read_line(graph, array))
                 throw new ASTJsonException("Unknown line type : " + line);
 
             line = reader.readLine();
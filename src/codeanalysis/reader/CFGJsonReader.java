@@ -9,7 +9,6 @@ package org.polymtl.codeanalysis.reader;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.polymtl.codeanalysis.exceptions.ASTJsonException;
 import org.polymtl.codeanalysis.model.*;
 import org.polymtl.codeanalysis.util.Pair;
@@ -19,11 +18,18 @@ import java.io.IOException;
 
 public class CFGJsonReader extends GraphJsonReader implements defsInt {
     public CFG read(String filename) throws IOException {
+        if(GraphBinaryReader.isBinary(filename)) {
+            CFG graph = new CFG();
+            read_binary(graph, filename, array -> read_line(graph, array));
+            if(graph.getRoot() == UNDEF_VAL)
+                throw new ASTJsonException("No node root set");
+            return graph;
+        }
         return this.read(this.read_file(filename));
     }
     public CFG read(BufferedReader reader) throws IOException, JSONException {
         CFG graph = new CFG();
-        JSONTokener jsonparser;
+        LineRecordScanner scanner = new LineRecordScanner();
         JSONArray array;
         String line = reader.readLine();
         while (line != null ) {
@@ -34,10 +40,9 @@ public class CFGJsonReader extends GraphJsonReader implements defsInt {
             if( line.equals("]") )
                 break;
 
-            jsonparser = new JSONTokener(line);
-            array = new JSONArray(jsonparser);
+            array = read_record(graph, scanner, line);
 
-            if(!read_line(graph, array))
+            if(array != null && !read_line(graph, array))
                 throw new ASTJsonException("Unknown line type : " + line);
 
             line = reader.readLine();
@@ -24,7 +24,7 @@ public class CFGforDDJsonReader extends GraphJsonReader implements defsInt {
     }
     public CFGforDD read(BufferedReader reader) throws IOException, JSONException {
         graph = new CFGforDD();
-        JSONTokener jsonparser;
+        LineRecordScanner scanner = new LineRecordScanner();
         JSONArray array;
         String line = reader.readLine();
         while (line != null ) {
@@ -35,8 +35,7 @@ public class CFGforDDJsonReader extends GraphJsonReader implements defsInt {
             if( line.equals("]") )
                 break;
 
-            jsonparser = new JSONTokener(line);
-            array = new JSONArray(jsonparser);
+            array = scanner.scan(line) ? scanner.toJSONArray() : new JSONArray(new JSONTokener(line));
 
 
             switch ((String) array.get(0)) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.reader;
+
+import org.polymtl.codeanalysis.exceptions.ASTJsonException;
+
+import java.io.*;
+
+// Binary encoding of the records of the JSON graph files, written by GraphBinaryWriter
+//   magic "OAGB", version, string dictionary, then blocks of records sharing the same name and field kinds
+//   block : name (dictionary index), field kinds, record count, records
+//   field : int as zigzag varint delta from the previous record of the block, dictionary index,
+//           length-prefixed string, length-prefixed raw bytes of a binary image, nothing for null
+// Integers are LEB128 varints, strings are a char count followed by one varint per char
+// Version 2 adds the raw bytes field, version 1 files are read as well
+public class GraphBinaryReader implements Closeable {
+    public static final String EXTENSION = ".bin";
+    public static final byte[] MAGIC     = {'O', 'A', 'G', 'B'};
+    public static final int    VERSION   = 2;
+
+    public static final byte KIND_INT    = 0;
+    public static final byte KIND_DICT   = 1;
+    public static final byte KIND_STRING = 2;
+    public static final byte KIND_NULL   = 3;
+    public static final byte KIND_BYTES  = 4;
+
+    private final InputStream in;
+    private final String[] dictionary;
+    private int blocksLeft;
+    private int recordsLeft = 0;
+    private String name = null;
+    private byte[] kinds = new byte[0];
+    private int[] previous = new int[0];
+
+    public static boolean isBinary(String filename) {
+        return filename.endsWith(EXTENSION);
+    }
+
+    public GraphBinaryReader(String filename) throws IOException {
+        this(new FileInputStream(filename));
+    }
+    public GraphBinaryReader(InputStream stream) throws IOException {
+        in = new BufferedInputStream(stream, 1 << 16);
+        for(byte b : MAGIC)
+            if(in.read() != b)
+                throw new ASTJsonException("Not a binary graph file");
+        int version = readVarint();
+        if(version < 1 || version > VERSION)
+            throw new ASTJsonException("Unsupported binary graph version " + version);
+
+        dictionary = new String[readVarint()];
+        for(int i = 0 ; i < dictionary.length ; i++)
+            dictionary[i] = readString();
+        blocksLeft = readVarint();
+    }
+
+    // False at the end of the file
+    public boolean next(LineRecordScanner record) throws IOException {
+        while(recordsLeft == 0) {
+            if(blocksLeft == 0)
+                return false;
+            readBlockHeader();
+        }
+        recordsLeft--;
+
+        record.clear();
+        record.add(name);
+        for(int i = 0 ; i < kinds.length ; i++) {
+            switch (kinds[i]) {
+                case KIND_INT:
+                    previous[i] += unzigzag(readVarint());
+                    record.add(previous[i]);
+                    break;
+                case KIND_DICT:
+                    record.add(dictionary(readVarint()));
+                    break;
+                case KIND_STRING:
+                    record.add(readString());
+                    break;
+                case KIND_NULL:
+                    record.add((String) null);
+                    break;
+                case KIND_BYTES:
+                    record.add(readBytes());
+                    break;
+                default:
+                    throw new ASTJsonException("Unknown field kind " + kinds[i]);
+            }
+        }
+        return true;
+    }
+
+    private void readBlockHeader() throws IOException {
+        blocksLeft--;
+        name = dictionary(readVarint());
+        kinds = new byte[readVarint()];
+        if(kinds.length + 1 > 8)
+            throw new ASTJsonException("Too many fields in block " + name);
+        for(int i = 0 ; i < kinds.length ; i++)
+            kinds[i] = (byte) readByte();
+        previous = new int[kinds.length];
+        recordsLeft = readVarint();
+    }
+
+    private String dictionary(int index) {
+        if(index < 0 || index >= dictionary.length)
+            throw new ASTJsonException("Wrong dictionary index " + index);
+        return dictionary[index];
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if(b < 0)
+            throw new EOFException("Truncated binary graph file");
+        return b;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for(int shift = 0 ; shift < 35 ; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new ASTJsonException("Malformed varint");
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String readString() throws IOException {
+        int length = readVarint();
+        if(length < 0)
+            throw new ASTJsonException("Wrong string length " + length);
+        char[] chars = new char[length];
+        for(int i = 0 ; i < length ; i++)
+            chars[i] = (char) readVarint();
+        return new String(chars);
+    }
+
+    private byte[] readBytes() throws IOException {
+        int length = readVarint();
+        if(length < 0)
+            throw new ASTJsonException("Wrong bytes length " + length);
+        byte[] bytes = new byte[length];
+        for(int read = 0 ; read < length ; ) {
+            int n = in.read(bytes, read, length - read);
+            if(n < 0)
+                throw new EOFException("Truncated binary graph file");
+            read += n;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
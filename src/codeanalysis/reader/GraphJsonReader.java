@@ -8,10 +8,12 @@ package org.polymtl.codeanalysis.reader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONTokener;
 import org.polymtl.codeanalysis.exceptions.*;
 import org.polymtl.codeanalysis.model.*;
 
 import java.io.*;
+import java.util.function.Predicate;
 import java.util.zip.GZIPInputStream;
 
 abstract public class GraphJsonReader implements defsInt {
@@ -21,6 +23,81 @@ abstract public class GraphJsonReader implements defsInt {
         return new BufferedReader(new FileReader(filename));
     }
 
+    // Records of the base schema go straight to the graph, the other ones are returned as JSONArray
+    protected JSONArray read_record(Graph graph, LineRecordScanner scanner, String line) {
+        if(!scanner.scan(line))
+            return new JSONArray(new JSONTokener(line));
+        if(scanner.isString(0) && read_record(graph, scanner))
+            return null;
+        return scanner.toJSONArray();
+    }
+
+    // Same records as the JSON files, read from a GraphBinaryReader file
+    protected void read_binary(Graph graph, String filename, Predicate<JSONArray> readLine) throws IOException {
+        LineRecordScanner record = new LineRecordScanner();
+        try (GraphBinaryReader reader = new GraphBinaryReader(filename)) {
+            while (reader.next(record)) {
+                if(record.isString(0) && read_record(graph, record))
+                    continue;
+                JSONArray array = record.toJSONArray();
+                if(!readLine.test(array))
+                    throw new ASTJsonException("Unknown line type : " + array);
+            }
+        }
+    }
+
+    // Only well-formed records, errors are reported by the JSONArray path
+    private boolean read_record(Graph graph, LineRecordScanner record) {
+        switch (record.getString(0)) {
+            case "node_root":
+                if (!record.isInt(1))
+                    return false;
+                graph.setRoot(record.getInt(1));
+                return true;
+            case "type":
+                if (record.size() != 3 || !record.isInt(1) || !record.isString(2))
+                    return false;
+                setNodeType(graph, record.getInt(1), record.getString(2));
+                return true;
+            case "ast_succ":
+            case "cfg_succ":
+            case "succ":
+                if (record.size() != 3 || !record.isInt(1) || !record.isInt(2))
+                    return false;
+                graph.addEdge(record.getInt(1), record.getInt(2));
+                return true;
+            case "token":
+            case "image":
+                if (record.size() == 3 && record.isInt(1) && record.isBytes(2)) {
+                    if(graph.hasImage(record.getInt(1)))
+                        throw new ASTJsonException("Duplicate 'token/image' for node id " + record.getInt(1));
+                    graph.setNodeBytes(record.getInt(1), record.getBytes(2));
+                    return true;
+                }
+                if (record.size() != 3 || !record.isInt(1) || !record.isString(2))
+                    return false;
+                setNodeImage(graph, record.getInt(1), record.getString(2));
+                return true;
+            case "line_begin":
+            case "line_end":
+            case "column_begin":
+            case "column_end":
+            case "token_begin":
+            case "token_end":
+                if (record.size() != 3 || !record.isInt(1) || !record.isInt(2))
+                    return false;
+                setNodePosition(graph, record.getString(0), record.getInt(1), record.getInt(2));
+                return true;
+            case "filename":
+                if (record.size() != 2 || !record.isString(1))
+                    return false;
+                graph.setFilename(record.getString(1));
+                return true;
+            default:
+                return false;
+        }
+    }
+
     protected boolean read_line(Graph graph, JSONArray array) {
         switch ((String) array.get(0)) {
             case "node_root":
@@ -69,8 +146,9 @@ abstract public class GraphJsonReader implements defsInt {
             throw new ASTJsonException("'type' have missing values - " + list.toString());
         }
 
-        int idNode = (Integer) list.get(1);
-        String type = (String) list.get(2);
+        setNodeType(graph, (Integer) list.get(1), (String) list.get(2));
+    }
+    private void setNodeType(Graph graph, int idNode, String type) {
         if(graph.getTypeTable().containsKey(idNode))
             throw new ASTJsonException("Duplicate 'type' for node id " + idNode);
 
@@ -118,13 +196,14 @@ abstract public class GraphJsonReader implements defsInt {
             throw new ASTJsonException("'"+list.get(0)+"' have missing values - " + list.toString());
         }
 
-        int idNode = (Integer) list.get(1);
-        int pos = (Integer) list.get(2);
+        setNodePosition(graph, (String) list.get(0), (Integer) list.get(1), (Integer) list.get(2));
+    }
+    private void setNodePosition(Graph graph, String key, int idNode, int pos) {
         Integer[] posList = {null, null, null, null, null, null};
         if(graph.getPositions(idNode) != null)
             posList = graph.getPositions(idNode);
 
-        switch ((String) list.get(0)) {
+        switch (key) {
             case "line_begin":
                 posList[0] = pos;
                 break;
@@ -144,7 +223,7 @@ abstract public class GraphJsonReader implements defsInt {
                 posList[5] = pos;
                 break;
             default:
-                throw new ASTJsonException("Logic error, position expected : " + list);
+                throw new ASTJsonException("Logic error, position expected : " + key);
         }
         graph.setNodePosition(idNode, posList);
     }
@@ -160,10 +239,11 @@ abstract public class GraphJsonReader implements defsInt {
             throw new ASTJsonException("'token' have missing values - " + list.toString());
         }
 
-        int idNode = (Integer) list.get(1);
-        if(graph.getImage(idNode) != null)
+        setNodeImage(graph, (Integer) list.get(1), (String) list.get(2));
+    }
+    private void setNodeImage(Graph graph, int idNode, String token) {
+        if(graph.hasImage(idNode))
             throw new ASTJsonException("Duplicate 'token/image' for node id " + idNode);
-        String token = (String) list.get(2);
         graph.setNodeImage(idNode, token);
     }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.reader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.polymtl.codeanalysis.model.Graph;
+
+// Scanner for the flat records of the graph files, e.g. `  ["type", 12, "Variable"],`
+// Fields are kept in reused arrays, only strings, int and null are accepted, anything else is left to JSONTokener
+// Also holds the records decoded by GraphBinaryReader
+public class LineRecordScanner {
+    private static final int MAX_FIELDS = 8;
+    private static final int MAX_INTERNED_LENGTH = 64;
+    private static final byte INT    = 0;
+    private static final byte STRING = 1;
+    private static final byte NULL   = 2;
+    private static final byte BYTES  = 3;
+
+    private final byte[]    kinds    = new byte[MAX_FIELDS];
+    private final int[]     ints     = new int[MAX_FIELDS];
+    private final String[]  strings  = new String[MAX_FIELDS];
+    private final byte[][]  bytes    = new byte[MAX_FIELDS][];
+    private final StringBuilder buffer = new StringBuilder();
+    private final String[]  interned = new String[4096]; // Node types and record names repeat on every line
+    private int internedCount = 0;
+    private int size = 0;
+
+    private String line;
+    private int pos;
+
+    // False if the line is not a flat record, nothing is read then
+    public boolean scan(String line) {
+        this.line = line;
+        this.pos = 0;
+        this.size = 0;
+
+        skipWhitespace();
+        if(!consume('['))
+            return false;
+        skipWhitespace();
+        if(consume(']'))
+            return false;
+        while(true) {
+            if(size == MAX_FIELDS || !scanValue())
+                return false;
+            size++;
+            skipWhitespace();
+            if(consume(']'))
+                return true;
+            if(!consume(','))
+                return false;
+            skipWhitespace();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+    public boolean isString(int i) {
+        return i < size && kinds[i] == STRING;
+    }
+    public boolean isInt(int i) {
+        return i < size && kinds[i] == INT;
+    }
+    public boolean isBytes(int i) {
+        return i < size && kinds[i] == BYTES;
+    }
+    public String getString(int i) {
+        return strings[i];
+    }
+    public byte[] getBytes(int i) {
+        return bytes[i];
+    }
+    public int getInt(int i) {
+        return ints[i];
+    }
+
+    // Same values as JSONArray(JSONTokener) would hold
+    public JSONArray toJSONArray() {
+        JSONArray array = new JSONArray();
+        for(int i = 0 ; i < size ; i++) {
+            if(kinds[i] == STRING)
+                array.put(strings[i]);
+            else if(kinds[i] == BYTES)
+                array.put(Graph.encodeHex(bytes[i]));
+            else if(kinds[i] == INT)
+                array.put(ints[i]);
+            else
+                array.put(JSONObject.NULL);
+        }
+        return array;
+    }
+
+    void clear() {
+        size = 0;
+    }
+    boolean add(int value) {
+        if(size == MAX_FIELDS)
+            return false;
+        kinds[size] = INT;
+        ints[size++] = value;
+        return true;
+    }
+    boolean add(String value) {
+        if(size == MAX_FIELDS)
+            return false;
+        kinds[size] = (value == null) ? NULL : STRING;
+        strings[size++] = value;
+        return true;
+    }
+    boolean add(byte[] value) {
+        if(size == MAX_FIELDS)
+            return false;
+        kinds[size] = BYTES;
+        bytes[size++] = value;
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while(pos < line.length() && line.charAt(pos) <= ' ')
+            pos++;
+    }
+    private boolean consume(char c) {
+        if(pos < line.length() && line.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean scanValue() {
+        if(pos >= line.length())
+            return false;
+        char c = line.charAt(pos);
+        if(c == '"')
+            return scanString();
+        if(c == '-' || (c >= '0' && c <= '9'))
+            return scanInt();
+        if(line.startsWith("null", pos)) {
+            pos += 4;
+            kinds[size] = NULL;
+            return pos >= line.length() || line.charAt(pos) == ',' || line.charAt(pos) == ']' || line.charAt(pos) <= ' ';
+        }
+        return false;
+    }
+
+    private boolean scanInt() {
+        int begin = pos;
+        boolean negative = consume('-');
+        int digits = pos;
+        long value = 0;
+        while(pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+            value = value * 10 + (line.charAt(pos) - '0');
+            if(value > (long) Integer.MAX_VALUE + 1)
+                return false;
+            pos++;
+        }
+        int length = pos - digits;
+        if(length == 0 || (length > 1 && line.charAt(digits) == '0') || (negative && value == 0))
+            return false; // Leading zero or -0, not an int for JSONObject.stringToValue
+        if(pos < line.length()) {
+            char next = line.charAt(pos);
+            if(next != ',' && next != ']' && next > ' ')
+                return false; // Fraction, exponent or garbage
+        }
+        value = negative ? -value : value;
+        if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE || pos == begin)
+            return false;
+        kinds[size] = INT;
+        ints[size] = (int) value;
+        return true;
+    }
+
+    private boolean scanString() {
+        int begin = ++pos;
+        while(pos < line.length()) {
+            char c = line.charAt(pos);
+            if(c == '"') {
+                kinds[size] = STRING;
+                strings[size] = intern(begin, pos);
+                pos++;
+                return true;
+            }
+            if(c == '\\')
+                return scanEscapedString(begin);
+            if(c == '\n' || c == '\r')
+                return false;
+            pos++;
+        }
+        return false;
+    }
+
+    private boolean scanEscapedString(int begin) {
+        buffer.setLength(0);
+        buffer.append(line, begin, pos);
+        while(pos < line.length()) {
+            char c = line.charAt(pos++);
+            switch (c) {
+                case '"':
+                    kinds[size] = STRING;
+                    strings[size] = buffer.toString();
+                    return true;
+                case '\n':
+                case '\r':
+                    return false;
+                case '\\':
+                    if(pos >= line.length())
+                        return false;
+                    c = line.charAt(pos++);
+                    switch (c) {
+                        case 'b': buffer.append('\b'); break;
+                        case 't': buffer.append('\t'); break;
+                        case 'n': buffer.append('\n'); break;
+                        case 'f': buffer.append('\f'); break;
+                        case 'r': buffer.append('\r'); break;
+                        case '"':
+                        case '\'':
+                        case '\\':
+                        case '/':
+                            buffer.append(c);
+                            break;
+                        case 'u':
+                            if(pos + 4 > line.length())
+                                return false;
+                            int code = 0;
+                            for(int i = 0 ; i < 4 ; i++) {
+                                int digit = Character.digit(line.charAt(pos++), 16);
+                                if(digit < 0)
+                                    return false;
+                                code = code * 16 + digit;
+                            }
+                            buffer.append((char) code);
+                            break;
+                        default:
+                            return false;
+                    }
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+        return false;
+    }
+
+    // Share the String of repeated short values, without building a key to look it up
+    private String intern(int begin, int end) {
+        int length = end - begin;
+        if(length > MAX_INTERNED_LENGTH)
+            return line.substring(begin, end);
+        int hash = 0;
+        for(int i = begin ; i < end ; i++)
+            hash = 31 * hash + line.charAt(i);
+        int mask = interned.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for(int probe = 0 ; probe < 8 ; probe++, slot = (slot + 1) & mask) {
+            String candidate = interned[slot];
+            if(candidate == null) {
+                String value = line.substring(begin, end);
+                if(internedCount < interned.length / 2) {
+                    interned[slot] = value;
+                    internedCount++;
+                }
+                return value;
+            }
+            if(candidate.length() == length && line.regionMatches(begin, candidate, 0, length))
+                return candidate;
+        }
+        return line.substring(begin, end);
+    }
+}
@@ -8,7 +8,6 @@ package org.polymtl.codeanalysis.reader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONTokener;
 import org.polymtl.codeanalysis.exceptions.*;
 import org.polymtl.codeanalysis.model.*;
 
@@ -21,7 +20,7 @@ public class ParseTreeJsonReader extends GraphJsonReader implements defsInt {
     }
     public ParseTree read(BufferedReader reader) throws IOException, JSONException {
         ParseTree graph = new ParseTree();
-        JSONTokener jsonparser;
+        LineRecordScanner scanner = new LineRecordScanner();
         JSONArray array;
         String line = reader.readLine();
         while (line != null ) {
@@ -32,10 +31,9 @@ public class ParseTreeJsonReader extends GraphJsonReader implements defsInt {
             if( line.equals("]") )
                 break;
 
-            jsonparser = new JSONTokener(line);
-            array = new JSONArray(jsonparser);
+            array = read_record(graph, scanner, line);
 
-            if(!read_line(graph, array))
+            if(array != null && !read_line(graph, array))
                 throw new ASTJsonException("Unknown line type : " + line);
 
             line = reader.readLine();
@@ -32,11 +32,11 @@ public class ASTDynMatcher {
             return false;
 
         if(this.type == TYPE.IDENTICAL) {
-            if (ast1.getImage(ast1NodeId) == null ^ ast2.getImage(ast2NodeId) == null)
+            if (ast1.hasImage(ast1NodeId) ^ ast2.hasImage(ast2NodeId))
                 this.type=TYPE.PARAMETRIC;
 
-            if (ast1.getImage(ast1NodeId) != null)
-                if(!ast1.getImage(ast1NodeId).equals(ast2.getImage(ast2NodeId)))
+            if (ast1.hasImage(ast1NodeId))
+                if(!ast1.sameImage(ast1NodeId, ast2, ast2NodeId))
                     this.type=TYPE.PARAMETRIC;
         }
 
@@ -52,6 +52,44 @@ public class ASTDynMatcher {
         return true;
     }
 
+    // Structural hash : equal for IDENTICAL trees (types, images and the four edge kinds)
+    public long hash(ASTDynamic ast) {
+        return hashSubTree(ast.getRoot(), ast, true);
+    }
+
+    // Shape hash : images are ignored, equal for any tree that is not DIFFERENT
+    public long shapeHash(ASTDynamic ast) {
+        return hashSubTree(ast.getRoot(), ast, false);
+    }
+
+    protected long hashSubTree(Integer nodeId, ASTDynamic ast, boolean withImages) {
+        long hash = mix(HASH_SEED, ast.getType(nodeId).hashCode());
+        if(withImages) {
+            hash = mix(hash, ast.hasImage(nodeId) ? ast.imageHashCode(nodeId) + 1 : 0);
+        }
+
+        hash = hashChildren(mix(hash, 1), ast.getChildren(nodeId),           ast, withImages);
+        hash = hashChildren(mix(hash, 2), ast.getDynamicResolution(nodeId),  ast, withImages);
+        hash = hashChildren(mix(hash, 3), ast.getDataflowResolution(nodeId), ast, withImages);
+        hash = hashChildren(mix(hash, 4), ast.getParseEdge(nodeId),          ast, withImages);
+        return hash;
+    }
+
+    private long hashChildren(long hash, List<Integer> children, ASTDynamic ast, boolean withImages) {
+        if(children == null)
+            return mix(hash, -1);
+        hash = mix(hash, children.size());
+        for (Integer childId : children)
+            hash = mix(hash, hashSubTree(childId, ast, withImages));
+        return hash;
+    }
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
     private boolean matchChildren(List<Integer> children1, List<Integer> children2, ASTDynamic ast1, ASTDynamic ast2) {
         if(children1 == null ^ children2 == null)
             return false;
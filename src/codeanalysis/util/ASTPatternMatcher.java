@@ -53,7 +53,7 @@ public class ASTPatternMatcher {
             return false;
 
         if(pattern.getImage(patternNodeId) != null) {
-            if (source.getImage(sourceNodeId) == null)
+            if (!source.hasImage(sourceNodeId))
                 return false;
             else if (pattern.getImage(patternNodeId).toString().endsWith("*")) { // End with *
                 String img = pattern.getImage(patternNodeId).toString();
@@ -65,7 +65,7 @@ public class ASTPatternMatcher {
                 img = img.substring(1);
                 if (!source.getImage(sourceNodeId).toString().endsWith(img))
                     return false;
-            } else if (!source.getImage(sourceNodeId).equals(pattern.getImage(patternNodeId)))
+            } else if (!source.sameImage(sourceNodeId, pattern, patternNodeId))
                 return false;
         }
 
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.apache.commons.cli.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.polymtl.codeanalysis.exceptions.CodeAnalysisException;
+import org.polymtl.codeanalysis.model.AST;
+import org.polymtl.codeanalysis.model.ASTDynamic;
+import org.polymtl.codeanalysis.reader.ASTJsonReader;
+import org.polymtl.codeanalysis.visitors.PatternSubstitution;
+import org.polymtl.codeanalysis.writer.ASTDynamicJsonPrint;
+import org.polymtl.codeanalysis.writer.JsonRecordWriter;
+import org.polymtl.codeanalysis.writer.Printer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Long-lived process answering requests of one JSON object per line with one JSON line, on stdin/stdout or a local port
+//   {"id": 1, "op": "cfgfordd", "path": "a.cfg.json"}         CFG translated to CFGforDD, as CFGTranslator
+//   {"id": 2, "op": "dot", "path": "a.ast.json", "type": "ast"} Graph as DOT, as JSONtoDOT, type guessed from path if not given
+//   {"id": 3, "op": "resolve", "file": "./kit/a.php.ast.json.gz"} Evals of a file of the AST directory, as EvalResolver
+//   {"id": 4, "op": "stats"}                                     CFG+DD and payload caches
+//   {"id": 5, "op": "invalidate"}                                CFG+DD graphs, node indexes and includes read again
+//   {"id": 6, "op": "resolvekit", "kit": "k", "files": [...]}     Files of a kit translated and resolved in memory, see KitPipeline
+// The graph is read from "path" or from the text of "data", the output is returned in "result" or written to "out"
+// Paths of a request must be in one of the root directories, the current directory if none is given
+// The response has the request id, "ok", then "error" or the output, and the time taken in "ms"
+// The CFG+DD graphs, decoded and parsed payloads stay cached from one request to the next, a CFG+DD graph or
+// include is read again when its file changes, a kit translated again needs an invalidate for its node index
+public class AnalysisServer {
+    private static final Logger LOGGER = CustomLogger.getLogger(AnalysisServer.class.getName());
+    private static CommandLine cmdline = null;
+    private static String inDirAst = null;
+    private static String inDirDd = null;
+    private static List<File> roots = null;
+
+    public static void main(String[] args) {
+        Option option_port = Option.builder("p")
+                .longOpt("port")
+                .required(false)
+                .hasArg(true)
+                .desc("Port on the loopback interface, requests are read from stdin if not given")
+                .build();
+        Option option_inDirAst = Option.builder("iast")
+                .longOpt("in-dir")
+                .required(false)
+                .hasArg(true)
+                .desc("Input Directory for AST, of the resolve requests")
+                .build();
+        Option option_inDirDd = Option.builder("idd")
+                .longOpt("in-dir-dd")
+                .required(false)
+                .hasArg(true)
+                .desc("Input Directory for DD, of the resolve requests")
+                .build();
+        Option option_threads = Option.builder("t")
+                .longOpt("threads")
+                .required(false)
+                .hasArg(true)
+                .desc("Number of connections served in parallel (default 4)")
+                .build();
+        Option option_root = Option.builder("r")
+                .longOpt("root")
+                .required(false)
+                .hasArgs()
+                .desc("Directories the requests may read and write, the current directory if not given")
+                .build();
+        Option option_debug = Option.builder("d")
+                .longOpt("debug")
+                .required(false)
+                .hasArg(false)
+                .desc("Show debug log")
+                .build();
+
+        Options options = new Options();
+        options.addOption(option_port);
+        options.addOption(option_inDirAst);
+        options.addOption(option_inDirDd);
+        options.addOption(option_threads);
+        options.addOption(option_root);
+        options.addOption(option_debug);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            cmdline = parser.parse(options, args);
+            if(cmdline.hasOption("p") && !cmdline.getOptionValue("p").matches("[0-9]+"))
+                throw new ParseException("Invalid port: " + cmdline.getOptionValue("p"));
+            if(cmdline.hasOption("t") && !cmdline.getOptionValue("t").matches("[1-9][0-9]*"))
+                throw new ParseException("Invalid number of threads: " + cmdline.getOptionValue("t"));
+        }
+        catch (ParseException exp) {
+            System.err.println("Wrong arguments: " + exp.getMessage());
+            (new HelpFormatter()).printHelp("AnalysisServer [--port <port>] [--in-dir <ast_folder>] [--in-dir-dd <dd_folder>] [--root <dir>...]", options);
+            System.exit(1);
+            return;
+        }
+
+        CustomLogger.setLevel(cmdline.hasOption("d") ? Level.ALL : Level.WARNING);
+        inDirAst = cmdline.getOptionValue("iast", "");
+        inDirDd = cmdline.getOptionValue("idd");
+        try {
+            setRoots(cmdline.hasOption("r") ? cmdline.getOptionValues("r") : new String[]{"."});
+            if(cmdline.hasOption("p"))
+                listen(Integer.parseInt(cmdline.getOptionValue("p")), Integer.parseInt(cmdline.getOptionValue("t", "4")));
+            else
+                serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            LOGGER.severe("Server stopped : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static void setRoots(String[] dirs) throws IOException {
+        List<File> canonical = new ArrayList<>();
+        for(String dir : dirs)
+            canonical.add(new File(dir).getCanonicalFile());
+        roots = canonical;
+        KitPipeline.setReadable(AnalysisServer::inRoots); // Includes named by the analysed files
+    }
+
+    // Path of a request if it is in a root directory, links and .. resolved
+    private static String checkRoot(String path) throws IOException {
+        if(roots == null)
+            setRoots(new String[]{"."});
+        if(!inRoots(path))
+            throw new CodeAnalysisException("Path outside of the root directories : " + path);
+        return path;
+    }
+
+    private static boolean inRoots(String path) {
+        try {
+            File file = new File(path).getCanonicalFile();
+            for(File root : roots) {
+                for(File parent = file ; parent != null ; parent = parent.getParentFile())
+                    if(parent.equals(root))
+                        return true;
+            }
+        } catch (IOException e) {
+            LOGGER.fine("Cannot resolve " + path + " : " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Answers the requests of a stream until it is closed
+    public static void serve(BufferedReader in, PrintWriter out) throws IOException {
+        String line;
+        while((line = in.readLine()) != null) {
+            if(line.trim().isEmpty())
+                continue;
+            out.println(handle(line));
+            out.flush();
+        }
+    }
+
+    // Connections are served in parallel, the requests of a connection in order
+    private static void listen(int port, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            LOGGER.warning("Listening on " + server.getLocalSocketAddress());
+            while(true) {
+                Socket socket = server.accept();
+                pool.submit(() -> {
+                    try (Socket connection = socket;
+                         BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                         PrintWriter out = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+                        serve(in, out);
+                    } catch (IOException e) {
+                        LOGGER.warning("Connection closed : " + e.getMessage());
+                    }
+                });
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Response to one request, a failed request does not stop the server
+    public static String handle(String line) {
+        long start = System.nanoTime();
+        JSONObject response = new JSONObject();
+        try {
+            JSONObject request = new JSONObject(line);
+            if(request.has("id"))
+                response.put("id", request.get("id"));
+            switch (request.optString("op")) {
+                case "cfgfordd":
+                    output(request, response, out -> {
+                        try (BufferedReader reader = input(request)) {
+                            CFGTranslator.translate(reader, out);
+                        }
+                    });
+                    break;
+                case "dot":
+                    String type = request.has("type") ? request.getString("type")
+                            : request.has("path") ? JSONtoDOT.guessType(request.getString("path")) : null;
+                    output(request, response, out -> {
+                        try (BufferedReader reader = input(request)) {
+                            Printer printer = JSONtoDOT.dotPrinter(type, reader, request.optString("path", null), out);
+                            if(printer == null)
+                                throw new CodeAnalysisException("Unknown graph type : " + type);
+                            printer.print();
+                        }
+                    });
+                    break;
+                case "resolve":
+                    resolve(request, response);
+                    break;
+                case "stats":
+                    response.put("cfgDDCache", PatternSubstitution.getCfgDDCache().toString());
+                    response.put("decodedCache", PatternSubstitution.getDecodedCache().toString());
+                    response.put("parsedCache", PatternSubstitution.getParsedCache().toString());
+                    break;
+                case "resolvekit":
+                    resolveKit(request, response);
+                    break;
+                case "invalidate":
+                    PatternSubstitution.invalidateKitCaches();
+                    break;
+                default:
+                    throw new CodeAnalysisException("Unknown op : " + request.optString("op"));
+            }
+            response.put("ok", true);
+        } catch (Exception | StackOverflowError e) {
+            LOGGER.fine("Request failed : " + line);
+            response.put("ok", false);
+            response.put("error", e.getClass().getSimpleName() + " : " + e.getMessage());
+        }
+        response.put("ms", (System.nanoTime() - start) / 1000000);
+        return response.toString();
+    }
+
+    private interface Output {
+        void write(PrintWriter out) throws Exception;
+    }
+
+    private static BufferedReader input(JSONObject request) throws IOException {
+        if(request.has("data"))
+            return new BufferedReader(new StringReader(request.getString("data")));
+        if(request.has("path"))
+            return new BufferedReader(new InputStreamReader(new FileInputStream(checkRoot(request.getString("path"))), StandardCharsets.UTF_8));
+        throw new CodeAnalysisException("No path or data in request");
+    }
+
+    private static void output(JSONObject request, JSONObject response, Output output) throws Exception {
+        if(request.has("out")) {
+            try (PrintWriter out = JsonRecordWriter.open(new File(checkRoot(request.getString("out"))))) {
+                output.write(out);
+            }
+            response.put("out", request.getString("out"));
+            return;
+        }
+        StringWriter result = new StringWriter();
+        try (PrintWriter out = new PrintWriter(result)) {
+            output.write(out);
+        }
+        response.put("result", result.toString());
+    }
+
+    // Same resolution as one file of EvalResolver, the dynamic AST is written to "out" if the file has an eval
+    private static void resolve(JSONObject request, JSONObject response) throws Exception {
+        String file = request.getString("file");
+        String dirAst = request.optString("iast", inDirAst);
+        String dirDd = request.optString("idd", inDirDd);
+        if(dirDd != null)
+            checkRoot(dirDd);
+        AST ast = new ASTJsonReader().read(checkRoot(dirAst + file));
+        PatternSubstitution resolver = new PatternSubstitution();
+        resolver.visit(ast, file, dirAst, dirDd);
+
+        response.put("evalFound", resolver.isEvalFound());
+        response.put("iterations", resolver.getIterations());
+        response.put("errors", errors(resolver));
+        if(request.has("out") && resolver.isEvalFound()) {
+            new ASTDynamicJsonPrint(resolver.getDynamicAst(), new File(checkRoot(request.getString("out")))).print();
+            response.put("out", request.getString("out"));
+        }
+    }
+
+    // Files of one kit in the FormatForDD list order, so the CFG ids are the ones of the DD written from its output
+    // The ASTs and CFGs are taken from memory, the DD from the files. With "check", each file is also resolved
+    // from the files as "resolve" does, "same" tells if both give the same outcome and dynamic AST
+    private static void resolveKit(JSONObject request, JSONObject response) throws Exception {
+        String kit = request.getString("kit");
+        String dirAst = request.optString("iast", inDirAst);
+        String dirDd = request.optString("idd", inDirDd);
+        if(dirDd == null)
+            throw new CodeAnalysisException("No DD directory, requires idd");
+        checkRoot(dirDd);
+        List<String> files = new ArrayList<>();
+        JSONArray list = request.getJSONArray("files");
+        for(int i = 0 ; i < list.length() ; i++) {
+            checkRoot(dirAst + list.getString(i));
+            files.add(list.getString(i));
+        }
+
+        KitPipeline pipeline = new KitPipeline(kit, dirAst, Paths.get(dirDd, "cfg").toString(), true);
+        pipeline.translate(files);
+        JSONArray results = new JSONArray();
+        int different = 0;
+        for(String file : files) {
+            JSONObject result = new JSONObject().put("file", file);
+            try {
+                PatternSubstitution resolver = pipeline.resolve(file, dirDd);
+                result.put("evalFound", resolver.isEvalFound());
+                result.put("iterations", resolver.getIterations());
+                result.put("errors", errors(resolver));
+                if(request.optBoolean("check")) {
+                    PatternSubstitution fromFiles = new PatternSubstitution();
+                    fromFiles.visit(new ASTJsonReader().read(dirAst + file), file, dirAst, dirDd);
+                    boolean same = resolver.isEvalFound() == fromFiles.isEvalFound()
+                            && resolver.getIterations() == fromFiles.getIterations()
+                            && errors(resolver).similar(errors(fromFiles))
+                            && (!resolver.isEvalFound() || json(resolver.getDynamicAst()).equals(json(fromFiles.getDynamicAst())));
+                    result.put("same", same);
+                    if(!same)
+                        different++;
+                }
+            } catch (Exception | StackOverflowError e) {
+                result.put("error", e.getClass().getSimpleName() + " : " + e.getMessage());
+            }
+            results.put(result);
+        }
+        response.put("files", results);
+        if(request.optBoolean("check"))
+            response.put("different", different);
+    }
+
+    private static JSONArray errors(PatternSubstitution resolver) {
+        JSONArray errors = new JSONArray();
+        for(Exception e : resolver.getEvalErrors())
+            errors.put(e.getClass().getSimpleName() + " : " + e.getMessage());
+        return errors;
+    }
+
+    private static String json(ASTDynamic ast) {
+        StringWriter text = new StringWriter();
+        new ASTDynamicJsonPrint(ast, new PrintWriter(text)).print();
+        return text.toString();
+    }
+}
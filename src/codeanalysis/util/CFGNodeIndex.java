@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONTokener;
+import org.polymtl.codeanalysis.exceptions.ASTJsonException;
+import org.polymtl.codeanalysis.model.Graph;
+import org.polymtl.codeanalysis.reader.CFGJsonReader;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.logging.Logger;
+
+// Index from CFG node id to the CFG files of a kit, stored as runs of consecutive node ids per file
+public class CFGNodeIndex {
+    private static final Logger LOGGER = CustomLogger.getLogger(CFGNodeIndex.class.getName());
+    public static final String INDEX_FILENAME = "nodeIndex.json";
+
+    private final Map<String, List<int[]>> fileRuns = new LinkedHashMap<>(); // file (relative to kit) -> [begin, end]
+    private int[] runBegin = null;
+    private int[] runEnd = null;
+    private int[] runMaxEnd = null;
+    private String[] runFile = null;
+    private Map<String, Integer> fileOrder = null;
+    private long timestamp = System.currentTimeMillis(); // CFG files written later may be missing from the index
+
+    public void add(String file, Graph cfg) {
+        List<Integer> ids = new ArrayList<>(cfg.getNodeIds());
+        Collections.sort(ids);
+        List<int[]> runs = new ArrayList<>();
+        for(Integer id : ids) {
+            if(runs.size() > 0 && runs.get(runs.size()-1)[1] + 1 == id)
+                runs.get(runs.size()-1)[1] = id;
+            else
+                runs.add(new int[]{id, id});
+        }
+        synchronized (this) {
+            fileRuns.put(file, runs);
+            runBegin = null;
+        }
+    }
+
+    // Files which may contain the node, in index order
+    public synchronized List<String> lookup(Integer nodeId) {
+        if(runBegin == null)
+            sortRuns();
+        List<String> files = new ArrayList<>();
+        int i = Arrays.binarySearch(runBegin, nodeId);
+        if(i < 0)
+            i = -i - 2;
+        else
+            while(i + 1 < runBegin.length && runBegin[i + 1] == nodeId)
+                i++;
+        for(; i >= 0 && runMaxEnd[i] >= nodeId ; i--) {
+            if(runEnd[i] >= nodeId && !files.contains(runFile[i]))
+                files.add(runFile[i]);
+        }
+        files.sort(Comparator.comparingInt(fileOrder::get));
+        return files;
+    }
+
+    // Files of an older index of the kit missing from this one, kept if their CFG is still there
+    public synchronized void merge(CFGNodeIndex older, String kitDir) {
+        for(Map.Entry<String, List<int[]>> entry : older.fileRuns.entrySet()) {
+            if(!fileRuns.containsKey(entry.getKey()) && new File(kitDir, entry.getKey()).isFile())
+                fileRuns.put(entry.getKey(), entry.getValue());
+        }
+        runBegin = null;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public synchronized int size() {
+        return fileRuns.size();
+    }
+
+    private void sortRuns() {
+        List<Object[]> runs = new ArrayList<>();
+        for(Map.Entry<String, List<int[]>> entry : fileRuns.entrySet())
+            for(int[] run : entry.getValue())
+                runs.add(new Object[]{run[0], run[1], entry.getKey()});
+        runs.sort(Comparator.comparingInt(run -> (Integer) run[0]));
+
+        runBegin  = new int[runs.size()];
+        runEnd    = new int[runs.size()];
+        runMaxEnd = new int[runs.size()];
+        runFile   = new String[runs.size()];
+        fileOrder = new HashMap<>();
+        for(String file : fileRuns.keySet())
+            fileOrder.put(file, fileOrder.size());
+        for(int i = 0 ; i < runs.size() ; i++) {
+            runBegin[i]  = (Integer) runs.get(i)[0];
+            runEnd[i]    = (Integer) runs.get(i)[1];
+            runFile[i]   = (String)  runs.get(i)[2];
+            runMaxEnd[i] = (i == 0) ? runEnd[i] : Math.max(runEnd[i], runMaxEnd[i-1]);
+        }
+    }
+
+    // True if a CFG of the kit was written after the time
+    public static boolean changedSince(String kitDir, long time) {
+        List<String> cfgFiles = new ArrayList<>();
+        walk(kitDir, cfgFiles);
+        for(String cfgFile : cfgFiles) {
+            if((cfgFile.endsWith(".cfg.json") || cfgFile.endsWith(".cfg.bin")) && new File(cfgFile).lastModified() > time)
+                return true;
+        }
+        return false;
+    }
+
+    // Read every CFG of the kit once
+    public static CFGNodeIndex build(String kitDir) {
+        CFGNodeIndex index = new CFGNodeIndex();
+        CFGJsonReader reader = new CFGJsonReader();
+        List<String> cfgFiles = new ArrayList<>();
+        walk(kitDir, cfgFiles);
+        for(String cfgFile : cfgFiles) {
+            if(!cfgFile.endsWith(".cfg.json") && !cfgFile.endsWith(".cfg.bin"))
+                continue;
+            try {
+                index.add(relativize(kitDir, cfgFile), reader.read(cfgFile));
+            } catch (Exception e) {
+                LOGGER.warning("Cannot read " + cfgFile + " : " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    public static CFGNodeIndex read(String filename) throws IOException, JSONException {
+        CFGNodeIndex index = new CFGNodeIndex();
+        index.timestamp = new File(filename).lastModified();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (line.equals("[")) {
+                    line = reader.readLine();
+                    continue;
+                }
+                if (line.equals("]"))
+                    break;
+
+                JSONArray array = new JSONArray(new JSONTokener(line));
+                if (!"cfg_run".equals(array.get(0)) || array.length() != 4)
+                    throw new ASTJsonException("Unknown line type : " + line);
+                index.fileRuns.computeIfAbsent(array.getString(1), k -> new ArrayList<>())
+                        .add(new int[]{array.getInt(2), array.getInt(3)});
+                line = reader.readLine();
+            }
+        }
+        return index;
+    }
+
+    public synchronized void write(String filename) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filename)))) {
+            boolean firstline = true;
+            writer.write("[\n");
+            for (Map.Entry<String, List<int[]>> entry : fileRuns.entrySet()) {
+                for (int[] run : entry.getValue()) {
+                    if (firstline) firstline = false;
+                    else writer.write(",\n");
+                    JSONArray array = new JSONArray();
+                    array.put("cfg_run").put(entry.getKey()).put(run[0]).put(run[1]);
+                    writer.write("  " + array.toString());
+                }
+            }
+            writer.write("\n]\n");
+        }
+    }
+
+    public static String relativize(String kitDir, String file) {
+        return "." + File.separator + Paths.get(kitDir).toAbsolutePath().normalize()
+                .relativize(Paths.get(file).toAbsolutePath().normalize()).toString();
+    }
+
+    private static void walk( String path, List<String> filelist ) {
+        File root = new File( path );
+        File[] list = root.listFiles();
+        if (list == null) return;
+
+        for ( File f : list ) {
+            if ( f.isDirectory() )
+                walk( f.getPath(), filelist );
+            else
+                filelist.add(f.getPath());
+        }
+    }
+}
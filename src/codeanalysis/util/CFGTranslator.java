@@ -57,14 +57,7 @@ public class CFGTranslator {
             else
                 reader = new BufferedReader(new FileReader(cmdline.getOptionValue("filename")));
 
-            CFG graph = null;
-            Printer printer = null;
-            CFGJsonReader reader_cfg = new CFGJsonReader();
-            graph = reader_cfg.read(reader);
-            CFGtoCFGforDD translator = new CFGtoCFGforDD(graph);
-            CFGforDD newGraph = translator.visit();
-            printer = new CFGforDDJsonPrint(newGraph, new PrintWriter(System.out));
-            printer.print();
+            translate(reader, new PrintWriter(System.out));
         }
         catch (FileNotFoundException e) {
             System.err.println("ERROR: Input file not found.");
@@ -81,6 +74,18 @@ public class CFGTranslator {
 
     }
 
+    // CFG read from reader, written as CFGforDD to out
+    public static void translate(BufferedReader reader, PrintWriter out) throws Exception {
+        CFG graph = null;
+        Printer printer = null;
+        CFGJsonReader reader_cfg = new CFGJsonReader();
+        graph = reader_cfg.read(reader);
+        CFGtoCFGforDD translator = new CFGtoCFGforDD(graph);
+        CFGforDD newGraph = translator.visit();
+        printer = new CFGforDDJsonPrint(newGraph, out);
+        printer.print();
+    }
+
     private static void debug(Exception e) {
         System.err.println("\t" + e.getMessage());
         if(cmdline.hasOption("debug")) {
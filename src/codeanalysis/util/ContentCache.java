@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+// Content-addressed cache, keyed by a SHA-256 of the content, safe to share between threads
+// Bounded by the estimated size of its values, least recently used first out
+// Evicted values may be spilled to a directory and read back on a later miss
+public class ContentCache<V> {
+    private static final Logger LOGGER = CustomLogger.getLogger(ContentCache.class.getName());
+
+    public interface Spill<V> {
+        boolean write(File file, V value) throws IOException; // False if the value cannot be spilled
+        V read(File file) throws IOException;
+    }
+
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private long capacity;
+    private long weight = 0;
+    private File spillDir = null;
+    private String spillExtension = null;
+    private Spill<V> spill = null;
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ContentCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    // Hash of the parts, each one prefixed by its length so that ("ab", "c") and ("a", "bc") differ
+    public static String hash(byte[]... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for(byte[] part : parts) {
+            int length = part.length;
+            digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            digest.update(part);
+        }
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Path with the length and date of the file, a file written again gets a new key
+    public static String fileKey(String path) {
+        File file = new File(path);
+        return path + "\0" + file.length() + "\0" + file.lastModified();
+    }
+
+    public synchronized V get(String key) {
+        V value = entries.get(key);
+        if(value != null) {
+            hits++;
+            return value;
+        }
+        if(spill != null) {
+            File file = spillFile(key);
+            if(file.exists()) {
+                try {
+                    value = spill.read(file);
+                    diskHits++;
+                    put(key, value);
+                    return value;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warning("Cannot read spilled " + file + " : " + e.getMessage());
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String key, V value) {
+        if(capacity <= 0 || value == null)
+            return;
+        V old = entries.put(key, value);
+        if(old != null)
+            weight -= weigher.applyAsLong(old);
+        weight += weigher.applyAsLong(value);
+        trim();
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        trim();
+    }
+
+    public synchronized void setSpill(File dir, String extension, Spill<V> spill) {
+        this.spillDir = dir;
+        this.spillExtension = extension;
+        this.spill = spill;
+        if(dir != null)
+            dir.mkdirs();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    private File spillFile(String key) {
+        return new File(spillDir, key + spillExtension);
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, V>> it = entries.entrySet().iterator();
+        while(weight > Math.max(capacity, 0) && it.hasNext()) {
+            Map.Entry<String, V> entry = it.next();
+            it.remove();
+            weight -= weigher.applyAsLong(entry.getValue());
+            evictions++;
+            if(spill == null)
+                continue;
+            File file = spillFile(entry.getKey());
+            try {
+                if(!file.exists())
+                    spill.write(file, entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warning("Cannot spill " + file + " : " + e.getMessage());
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getWeight() { return weight; }
+    public synchronized long getCapacity() { return capacity; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getDiskHits() { return diskHits; }
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized double getHitRate() {
+        long total = hits + diskHits + misses;
+        return (total == 0) ? 0 : (double) (hits + diskHits) / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits %d (disk %d), misses %d, hit rate %.1f%%, evicted %d, size %d (%d/%d bytes)",
+                hits, diskHits, misses, 100 * getHitRate(), evictions, entries.size(), weight, capacity);
+    }
+}
@@ -16,11 +16,13 @@ import org.polymtl.codeanalysis.writer.*;
 import java.io.*;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 
 public class FormatForDD {
     private static CommandLine cmdline = null;
     private static final Logger LOGGER = CustomLogger.getLogger(FormatForDD.class.getName());
+
     public static void main(String[] args) {
         Option option_file = Option.builder("f")
                 .longOpt("filelist")
@@ -46,6 +48,18 @@ public class FormatForDD {
                 .hasArg(true)
                 .desc("Output folder cfg")
                 .build();
+        Option option_binary = Option.builder("bin")
+                .longOpt("binary")
+                .required(false)
+                .hasArg(false)
+                .desc("Write the CFGs in the binary graph format")
+                .build();
+        Option option_threads = Option.builder("t")
+                .longOpt("threads")
+                .required(false)
+                .hasArg(true)
+                .desc("Number of kits formatted in parallel (default 1)")
+                .build();
         Option option_debug = Option.builder("d")
                 .longOpt("debug")
                 .required(false)
@@ -59,11 +73,15 @@ public class FormatForDD {
         options.addOption(option_input);
         options.addOption(option_output_dd);
         options.addOption(option_output_cfg);
+        options.addOption(option_binary);
+        options.addOption(option_threads);
         options.addOption(option_debug);
 
         CommandLineParser parser = new DefaultParser();
         try {
             cmdline = parser.parse(options, args);
+            if(cmdline.hasOption("t") && !cmdline.getOptionValue("t").matches("[1-9][0-9]*"))
+                throw new ParseException("Invalid number of threads: " + cmdline.getOptionValue("t"));
         } catch (ParseException exp) {
             System.err.println("Wrong arguments: " + exp.getMessage());
             (new HelpFormatter()).printHelp("FormatForDD -f <filelist> -i <source_folder> -odd <output_folder> -ocfg <output_folder>", options);
@@ -83,46 +101,51 @@ public class FormatForDD {
 
         LOGGER.info("Found " + files.size() + " CFGs");
 
+        // Files of each kit in list order, the kits are formatted in parallel
+        Map<String, List<String>> kits = new LinkedHashMap<>();
         for(String file : files) {
-            LOGGER.info("---- Reading " + file + "----");
-            try {
-                String kitName = file.substring(2, file.indexOf("/", 3));
-
-                File inFile = Paths.get(cmdline.getOptionValue("input"), file).toFile();
-                String fileCfg = file.replace(".ast.json.gz", ".cfg.json").replace(".ast.json", ".cfg.json");
-                File outFileDd = Paths.get(cmdline.getOptionValue("output-dd"), fileCfg).toFile();
-                File outFileCfg = Paths.get(cmdline.getOptionValue("output-cfg"),  fileCfg).toFile();
-                outFileDd.getAbsoluteFile().getParentFile().mkdirs();
-                outFileCfg.getAbsoluteFile().getParentFile().mkdirs();
-
-                List<String> include_files = new ArrayList<>();
-                listIncludedFiles(inFile.toString(), include_files);
-
-                // Copy primal file
-                writeCfgFromAst(inFile, outFileCfg, outFileDd);
-                LOGGER.info("Writing CFG of " + fileCfg);
-                // Copy referred files
-                for(String include_file : include_files) {
-                    File parent = Paths.get(fileCfg).toFile().getParentFile();
-                    inFile = Paths.get(cmdline.getOptionValue("input"), parent.toString(), include_file+".ast.json.gz").toFile();
-                    if(!inFile.exists() || inFile.isDirectory()) {
-                        LOGGER.warning("No AST found for " + parent.toString()+"/"+include_file);
-                        continue;
-                    }
-                    outFileDd = Paths.get(cmdline.getOptionValue("output-dd"), parent.toString(), include_file+".cfg.json").toFile();
-                    outFileDd.getAbsoluteFile().getParentFile().mkdirs();
-                    outFileCfg = Paths.get(cmdline.getOptionValue("output-cfg"), parent.toString(), include_file+".cfg.json").toFile();
-                    outFileCfg.getAbsoluteFile().getParentFile().mkdirs();
-                    writeCfgFromAst(inFile, outFileCfg, outFileDd);
-                    LOGGER.info("Writing CFG of " + parent.toString()+"/"+include_file);
-                }
-
-            } catch (Exception e) {
-                e.printStackTrace();
-                LOGGER.severe("Failed - " + e.getMessage());
+            int kitEnd = file.indexOf("/", 3);
+            if(kitEnd < 0) {
+                LOGGER.severe("Failed - no kit in " + file);
+                continue;
             }
+            kits.computeIfAbsent(file.substring(2, kitEnd), k -> new ArrayList<>()).add(file);
         }
+        Map<String, CFGNodeIndex> nodeIndexes = new LinkedHashMap<>();
+        String cfgExtension = cmdline.hasOption("binary") ? ".cfg.bin" : ".cfg.json"; // cfgfordd stays in json for the DD tool
+
+        int threads = cmdline.hasOption("t") ? Integer.parseInt(cmdline.getOptionValue("t")) : 1;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
         try {
+            Map<String, Future<CFGNodeIndex>> tasks = new LinkedHashMap<>();
+            for(Map.Entry<String, List<String>> kit : kits.entrySet())
+                tasks.put(kit.getKey(), pool.submit(() -> formatKit(kit.getKey(), kit.getValue(), cfgExtension)));
+            for(Map.Entry<String, Future<CFGNodeIndex>> task : tasks.entrySet())
+                nodeIndexes.put(task.getKey(), task.getValue().get());
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            LOGGER.severe("Failed - " + e.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try {
+            // Node id -> CFG file, used to resolve dd pointing in included files
+            // Files of the kit formatted by an earlier run stay in the index
+            for(Map.Entry<String, CFGNodeIndex> entry : nodeIndexes.entrySet()) {
+                String kitCfgDir = Paths.get(cmdline.getOptionValue("output-cfg"), entry.getKey()).toString();
+                File indexFile = new File(kitCfgDir, CFGNodeIndex.INDEX_FILENAME);
+                if(indexFile.exists()) {
+                    try {
+                        entry.getValue().merge(CFGNodeIndex.read(indexFile.getPath()), kitCfgDir);
+                    } catch (Exception e) {
+                        LOGGER.warning("Cannot read " + indexFile + ", replaced : " + e.getMessage());
+                    }
+                }
+                entry.getValue().write(indexFile.getPath());
+            }
+
             File dir = new File(cmdline.getOptionValue("output-dd"));
             for(File kit : dir.listFiles()) {
                 List<String> cfgs = new ArrayList<>();
@@ -168,37 +191,14 @@ public class FormatForDD {
         }
     }
 
-    private static void listIncludedFiles(String inFile, List<String> include_list) throws IOException {
-        ASTJsonReader reader = new ASTJsonReader();
-        AST ast = reader.read(inFile);
-        for(Integer nodeId : ast.getTypeTable().keySet()) {
-            if(Arrays.asList("IncludeStatement", "IncludeOnceStatement", "RequireStatement", "RequireOnceStatement").contains(ast.getType(nodeId))) {
-                if (Arrays.asList("StringLiteral", "StringExpression").contains(ast.getType(ast.getChildren(nodeId).get(0)))) {
-                    String file = ast.getImage(ast.getChildren(nodeId).get(0));
-                    try {
-                        listIncludedFiles(file, include_list); //TODO: File doesn't exist, has to be relative to parent
-                    } catch (IOException e) {
-                        LOGGER.severe("Cannot read included file " + file);
-                    }
-                    include_list.add(file);
-                }
-                else
-                    LOGGER.warning("Include expr is : " + ast.getType(ast.getChildren(nodeId).get(0)));
-            }
-        }
-    }
-
-    private static void writeCfgFromAst(File astFile, File cfgFile, File cfgDDFile) throws Exception {
-        ASTJsonReader reader = new ASTJsonReader();
-        AST ast = reader.read(astFile.toString());
-        ASTtoCFG cfgTrans = new ASTtoCFG(ast);
-        CFG cfg = cfgTrans.visit();
-        Printer printer = new CFGJsonPrint(cfg, cfgFile);
-        printer.print();
-        CFGtoCFGforDD ddTrans = new CFGtoCFGforDD(cfg);
-        CFGforDD cfgdd = ddTrans.visit();
-        printer = new CFGforDDJsonPrint(cfgdd, cfgDDFile);
-        printer.print();
+    // CFG ids are unique in the kit, the scope of the dd resolution, and do not depend on the other kits
+    // An include shared by several files of the kit is translated once
+    private static CFGNodeIndex formatKit(String kitName, List<String> files, String cfgExtension) {
+        KitPipeline kit = new KitPipeline(kitName, cmdline.getOptionValue("input"), cmdline.getOptionValue("output-cfg"), false);
+        kit.setCfgExtension(cfgExtension);
+        kit.addSink(KitPipeline.fileSink(cmdline.getOptionValue("output-cfg"), cmdline.getOptionValue("output-dd"), cfgExtension));
+        kit.translate(files);
+        return kit.getNodeIndex();
     }
 
     private static List<String> loadFileList(File path, String srcFolder, String extension) throws IOException {
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.polymtl.codeanalysis.model.ASTDynamic;
+import org.polymtl.codeanalysis.reader.ASTDynamicJsonReader;
+import org.polymtl.codeanalysis.reader.GraphBinaryReader;
+import org.polymtl.codeanalysis.writer.ASTDynamicBinaryPrint;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+// Resolution summary of each file, reused while the file and every file read to resolve it are unchanged
+//   files.jsonl : settings of the run, then one entry per file with the fingerprints of its dependencies
+//   ast/        : resolved AST of the files with an eval, named by the hash of the file name
+// A dependency is unchanged if its length and date are the same, or else if its content hash is the same
+// Entries are safe to look up and store from several threads
+public class IncrementalCache implements Closeable {
+    private static final Logger LOGGER = CustomLogger.getLogger(IncrementalCache.class.getName());
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".astdyn" + GraphBinaryReader.EXTENSION;
+
+    // Outcome of a file, as aggregated in the report
+    public static class Entry {
+        public final boolean readFailed;
+        public final boolean evalFound;
+        public final String outcome;  // Null without eval
+        public final int iterations;
+        private final JSONArray dependencies;
+        private final String astFile; // Null without eval
+
+        Entry(boolean readFailed, boolean evalFound, String outcome, int iterations, JSONArray dependencies, String astFile) {
+            this.readFailed = readFailed;
+            this.evalFound = evalFound;
+            this.outcome = outcome;
+            this.iterations = iterations;
+            this.dependencies = dependencies;
+            this.astFile = astFile;
+        }
+    }
+
+    private final File dir;
+    private final String settings; // Options changing the resolution, entries of other settings are dropped
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> hashes = new ConcurrentHashMap<>(); // path, length and date -> content hash, for the run
+    private int hits = 0;
+    private int misses = 0;
+
+    public IncrementalCache(File dir, String settings) throws IOException {
+        this.dir = dir;
+        this.settings = settings;
+        new File(dir, "ast").mkdirs();
+        File index = new File(dir, "files.jsonl");
+        if(!index.exists())
+            return;
+        try (BufferedReader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+            JSONObject header = new JSONObject(reader.readLine());
+            if(header.getInt("version") != VERSION || !header.getString("settings").equals(settings)) {
+                LOGGER.info("Incremental cache " + dir + " was written with other settings, every file is resolved");
+                return;
+            }
+            String line;
+            while((line = reader.readLine()) != null) {
+                JSONObject entry = new JSONObject(line);
+                entries.put(entry.getString("file"), new Entry(entry.getBoolean("readFailed"), entry.getBoolean("evalFound"),
+                        entry.optString("outcome", null), entry.getInt("iterations"), entry.getJSONArray("dependencies"),
+                        entry.optString("ast", null)));
+            }
+        } catch (JSONException | NullPointerException e) {
+            LOGGER.warning("Cannot read incremental cache " + index + ", every file is resolved : " + e.getMessage());
+            entries.clear();
+        }
+        LOGGER.info("Incremental cache " + dir + " : " + entries.size() + " files");
+    }
+
+    // Entry of the file if none of its dependencies changed, else null
+    public Entry lookup(String file) {
+        Entry entry = entries.get(file);
+        if(entry != null) {
+            try {
+                for(int i = 0 ; i < entry.dependencies.length() ; i++) {
+                    if(!unchanged(entry.dependencies.getJSONArray(i))) {
+                        entry = null;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Cannot check dependencies of " + file + " : " + e.getMessage());
+                entry = null;
+            }
+        }
+        synchronized (this) {
+            if(entry == null)
+                misses++;
+            else
+                hits++;
+        }
+        return entry;
+    }
+
+    // Resolved AST of an entry with an eval
+    public ASTDynamic readAst(Entry entry) throws IOException {
+        return new ASTDynamicJsonReader().read(new File(new File(dir, "ast"), entry.astFile).getPath());
+    }
+
+    // Dependencies are the files read to resolve the file, the file included, fingerprinted as they are now
+    public void store(String file, Collection<String> dependencies, boolean readFailed, boolean evalFound, String outcome,
+                      int iterations, ASTDynamic dynamicAst) throws IOException {
+        JSONArray fingerprints = new JSONArray();
+        for(String dependency : dependencies)
+            fingerprints.put(fingerprint(new File(dependency)));
+        String astFile = null;
+        if(dynamicAst != null) {
+            astFile = ContentCache.hash(file.getBytes(StandardCharsets.UTF_8)) + EXTENSION;
+            new ASTDynamicBinaryPrint(dynamicAst, new File(new File(dir, "ast"), astFile)).print();
+        }
+        entries.put(file, new Entry(readFailed, evalFound, outcome, iterations, fingerprints, astFile));
+    }
+
+    // Path, length and date, content hash. A missing file has a length of -1, it must still be missing
+    private JSONArray fingerprint(File file) throws IOException {
+        if(!file.isFile())
+            return new JSONArray().put(file.getPath()).put(-1L).put(0L).put("");
+        long length = file.length();
+        long date = file.lastModified();
+        return new JSONArray().put(file.getPath()).put(length).put(date).put(hash(file, length, date));
+    }
+
+    // Files shared by many others, like the kit files, are hashed once while their length and date stay the same
+    private String hash(File file, long length, long date) throws IOException {
+        String key = file.getPath() + "\0" + length + "\0" + date;
+        String hash = hashes.get(key);
+        if(hash == null) {
+            hash = ContentCache.hash(Files.readAllBytes(file.toPath()));
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private boolean unchanged(JSONArray fingerprint) throws IOException {
+        File file = new File(fingerprint.getString(0));
+        if(!file.isFile())
+            return fingerprint.getLong(1) == -1L;
+        if(fingerprint.getLong(1) != file.length())
+            return false;
+        long date = file.lastModified();
+        if(fingerprint.getLong(2) == date)
+            return true;
+        if(!hash(file, fingerprint.getLong(1), date).equals(fingerprint.getString(3)))
+            return false;
+        fingerprint.put(2, date); // Touched only, no need to hash it again
+        return true;
+    }
+
+    public synchronized int getHits() { return hits; }
+    public synchronized int getMisses() { return misses; }
+
+    // Written in a new file, renamed over the old one once complete
+    @Override
+    public void close() throws IOException {
+        File index = new File(dir, "files.jsonl");
+        File tmp = new File(dir, "files.jsonl.tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            writer.write(new JSONObject().put("version", VERSION).put("settings", settings).toString());
+            writer.write("\n");
+            for(Map.Entry<String, Entry> file : new TreeMap<>(entries).entrySet()) {
+                Entry entry = file.getValue();
+                JSONObject line = new JSONObject()
+                        .put("file", file.getKey())
+                        .put("readFailed", entry.readFailed)
+                        .put("evalFound", entry.evalFound)
+                        .put("iterations", entry.iterations)
+                        .put("dependencies", entry.dependencies);
+                if(entry.outcome != null)
+                    line.put("outcome", entry.outcome);
+                if(entry.astFile != null)
+                    line.put("ast", entry.astFile);
+                writer.write(line.toString());
+                writer.write("\n");
+            }
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d unchanged, %d resolved", entries.size(), getHits(), getMisses());
+    }
+}
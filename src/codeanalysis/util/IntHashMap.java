@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import java.util.*;
+
+// Map keyed by primitive int, no entry object nor boxed key per mapping
+// Same buckets and chaining as HashMap, stored in arrays, so node ids keep the HashMap iteration order
+public class IntHashMap<V> extends AbstractMap<Integer, V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int NONE = -1;
+
+    private int[]    buckets;  // first entry of each bucket
+    private int[]    keys;
+    private Object[] values;
+    private int[]    next;     // next entry in bucket, or in the free list
+    private int      size = 0;
+    private int      used = 0; // entries ever allocated
+    private int      free = NONE;
+
+    public IntHashMap() {
+        buckets = newBuckets(DEFAULT_CAPACITY);
+        keys    = new int[DEFAULT_CAPACITY];
+        values  = new Object[DEFAULT_CAPACITY];
+        next    = new int[DEFAULT_CAPACITY];
+    }
+    // Sized like new HashMap<>(copyFrom) and filled in its iteration order, so the copy iterates as a HashMap copy would
+    public IntHashMap(Map<Integer, ? extends V> copyFrom) {
+        int capacity = copyFrom.isEmpty() ? DEFAULT_CAPACITY : tableSizeFor((int) (copyFrom.size() / 0.75f + 1.0f));
+        if(copyFrom instanceof IntHashMap && ((IntHashMap<?>) copyFrom).buckets.length == capacity) {
+            // Same buckets, the chains are already in the order the copy would build them
+            IntHashMap<?> other = (IntHashMap<?>) copyFrom;
+            this.buckets = other.buckets.clone();
+            this.keys    = other.keys.clone();
+            this.values  = other.values.clone();
+            this.next    = other.next.clone();
+            this.size    = other.size;
+            this.used    = other.used;
+            this.free    = other.free;
+        }
+        else {
+            buckets = newBuckets(capacity);
+            keys    = new int[capacity];
+            values  = new Object[capacity];
+            next    = new int[capacity];
+            putAll(copyFrom);
+        }
+    }
+
+    // HashMap.tableSizeFor
+    private static int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return (n < 0) ? 1 : (n >= (1 << 30)) ? (1 << 30) : n + 1;
+    }
+
+    // HashMap.threshold with the default load factor
+    private static int threshold(int capacity) {
+        return (int) (capacity * 0.75f);
+    }
+
+    private static int[] newBuckets(int capacity) {
+        int[] buckets = new int[capacity];
+        Arrays.fill(buckets, NONE);
+        return buckets;
+    }
+
+    private static int spread(int key) {
+        return key ^ (key >>> 16);
+    }
+
+    private int find(int key) {
+        for(int e = buckets[spread(key) & (buckets.length - 1)] ; e != NONE ; e = next[e])
+            if(keys[e] == key)
+                return e;
+        return NONE;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int e = find(key);
+        return (e == NONE) ? null : (V) values[e];
+    }
+    @Override
+    public V get(Object key) {
+        return (key instanceof Integer) ? get((int) (Integer) key) : null;
+    }
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(int key, V defaultValue) {
+        int e = find(key);
+        return (e == NONE) ? defaultValue : (V) values[e];
+    }
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        return (key instanceof Integer) ? getOrDefault((int) (Integer) key, defaultValue) : defaultValue;
+    }
+    public boolean containsKey(int key) {
+        return find(key) != NONE;
+    }
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof Integer) && containsKey((int) (Integer) key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int b = spread(key) & (buckets.length - 1);
+        int last = NONE;
+        for(int e = buckets[b] ; e != NONE ; e = next[e]) {
+            if(keys[e] == key) {
+                V oldValue = (V) values[e];
+                values[e] = value;
+                return oldValue;
+            }
+            last = e;
+        }
+
+        int e = allocate();
+        keys[e]   = key;
+        values[e] = value;
+        next[e]   = NONE;
+        if(last == NONE)
+            buckets[b] = e;
+        else
+            next[last] = e;
+        if(++size > threshold(buckets.length))
+            resize();
+        return null;
+    }
+    @Override
+    public V put(Integer key, V value) {
+        return put((int) key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int b = spread(key) & (buckets.length - 1);
+        int prev = NONE;
+        for(int e = buckets[b] ; e != NONE ; prev = e, e = next[e]) {
+            if(keys[e] != key)
+                continue;
+            V oldValue = (V) values[e];
+            if(prev == NONE)
+                buckets[b] = next[e];
+            else
+                next[prev] = next[e];
+            values[e] = null;
+            next[e] = free;
+            free = e;
+            size--;
+            return oldValue;
+        }
+        return null;
+    }
+    @Override
+    public V remove(Object key) {
+        return (key instanceof Integer) ? remove((int) (Integer) key) : null;
+    }
+
+    private int allocate() {
+        if(free != NONE) {
+            int e = free;
+            free = next[e];
+            return e;
+        }
+        if(used == keys.length) {
+            int capacity = keys.length * 2;
+            keys   = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            next   = Arrays.copyOf(next, capacity);
+        }
+        return used++;
+    }
+
+    // Split every bucket in two, keeping the chain order like HashMap.resize
+    private void resize() {
+        int oldCapacity = buckets.length;
+        int[] newBuckets = newBuckets(oldCapacity * 2);
+        for(int b = 0 ; b < oldCapacity ; b++) {
+            int loHead = NONE, loTail = NONE, hiHead = NONE, hiTail = NONE;
+            for(int e = buckets[b] ; e != NONE ; e = next[e]) {
+                if((spread(keys[e]) & oldCapacity) == 0) {
+                    if(loTail == NONE) loHead = e;
+                    else next[loTail] = e;
+                    loTail = e;
+                }
+                else {
+                    if(hiTail == NONE) hiHead = e;
+                    else next[hiTail] = e;
+                    hiTail = e;
+                }
+            }
+            if(loTail != NONE) {
+                next[loTail] = NONE;
+                newBuckets[b] = loHead;
+            }
+            if(hiTail != NONE) {
+                next[hiTail] = NONE;
+                newBuckets[b + oldCapacity] = hiHead;
+            }
+        }
+        buckets = newBuckets;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+    @Override
+    public void clear() {
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(values, 0, used, null);
+        size = 0;
+        used = 0;
+        free = NONE;
+    }
+
+    private abstract class EntryIterator<T> implements Iterator<T> {
+        private int bucket = 0;
+        private int entry = NONE;
+        private int current = NONE;
+
+        EntryIterator() {
+            advance();
+        }
+        private void advance() {
+            if(entry != NONE)
+                entry = next[entry];
+            while(entry == NONE && bucket < buckets.length)
+                entry = buckets[bucket++];
+        }
+        public boolean hasNext() {
+            return entry != NONE;
+        }
+        public T next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            current = entry;
+            advance();
+            return element(current);
+        }
+        public void remove() {
+            if(current == NONE)
+                throw new IllegalStateException();
+            IntHashMap.this.remove(keys[current]);
+            current = NONE;
+        }
+        abstract T element(int entry);
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        return new AbstractSet<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new EntryIterator<Integer>() {
+                    Integer element(int entry) { return keys[entry]; }
+                };
+            }
+            public int size() { return size; }
+            public boolean contains(Object o) { return containsKey(o); }
+            public boolean remove(Object o) {
+                if(!containsKey(o))
+                    return false;
+                IntHashMap.this.remove(o);
+                return true;
+            }
+            public void clear() { IntHashMap.this.clear(); }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                return new EntryIterator<V>() {
+                    V element(int entry) { return (V) values[entry]; }
+                };
+            }
+            public int size() { return size; }
+            public void clear() { IntHashMap.this.clear(); }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            public Iterator<Map.Entry<Integer, V>> iterator() {
+                return new EntryIterator<Map.Entry<Integer, V>>() {
+                    Map.Entry<Integer, V> element(int entry) { return new Entry(entry); }
+                };
+            }
+            public int size() { return size; }
+            public void clear() { IntHashMap.this.clear(); }
+        };
+    }
+
+    private class Entry implements Map.Entry<Integer, V> {
+        private final int entry;
+        private final int key;
+
+        Entry(int entry) {
+            this.entry = entry;
+            this.key = keys[entry];
+        }
+        public Integer getKey() {
+            return key;
+        }
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[entry];
+        }
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            V oldValue = (V) values[entry];
+            values[entry] = value;
+            return oldValue;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+        @Override
+        public int hashCode() {
+            return key ^ Objects.hashCode(getValue());
+        }
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import java.util.*;
+
+// List of node ids backed by an int array, sized for the few edges of a graph node
+public class IntList extends AbstractList<Integer> implements RandomAccess {
+    private static final int[] EMPTY = {};
+    private int[] data = EMPTY;
+    private int   size = 0;
+
+    public IntList() {super();}
+    public IntList(Collection<? extends Integer> copyFrom) {
+        if(copyFrom instanceof IntList) {
+            IntList other = (IntList) copyFrom;
+            data = Arrays.copyOf(other.data, other.size);
+            size = other.size;
+        }
+        else {
+            data = new int[copyFrom.size()];
+            for(Integer value : copyFrom)
+                data[size++] = value;
+        }
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, size);
+        return data[index];
+    }
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+    @Override
+    public Integer set(int index, Integer value) {
+        checkIndex(index, size);
+        int oldValue = data[index];
+        data[index] = value;
+        return oldValue;
+    }
+    @Override
+    public void add(int index, Integer value) {
+        checkIndex(index, size + 1);
+        if(size == data.length)
+            data = Arrays.copyOf(data, Math.max(2, size * 2));
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = value;
+        size++;
+        modCount++;
+    }
+    public void addInt(int value) {
+        if(size == data.length)
+            data = Arrays.copyOf(data, Math.max(2, size * 2));
+        data[size++] = value;
+        modCount++;
+    }
+    public int[] toIntArray() {
+        return Arrays.copyOf(data, size);
+    }
+    @Override
+    public Integer remove(int index) {
+        checkIndex(index, size);
+        int oldValue = data[index];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        modCount++;
+        return oldValue;
+    }
+    @Override
+    public int indexOf(Object o) {
+        if(!(o instanceof Integer))
+            return -1;
+        int value = (Integer) o;
+        for(int i = 0 ; i < size ; i++)
+            if(data[i] == value)
+                return i;
+        return -1;
+    }
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if(index < 0 || index >= bound)
+            throw new IndexOutOfBoundsException("Index: " + index);
+    }
+}
@@ -67,60 +67,13 @@ public class JSONtoDOT {
             if(cmdline.hasOption("type"))
                 graph_type = cmdline.getOptionValue("type");
             //Guess type if not yet resolved
-            if(graph_type == null && cmdline.hasOption("filename")) {
-                if(cmdline.getOptionValue("filename").endsWith(".parsetree.json"))
-                    graph_type = "parsetree";
-                else if(cmdline.getOptionValue("filename").endsWith(".compact.json") || cmdline.getOptionValue("filename").endsWith(".ast.json"))
-                    graph_type = "ast";
-                else if(cmdline.getOptionValue("filename").endsWith(".astdyn.json"))
-                    graph_type = "astdyn";
-                else if(cmdline.getOptionValue("filename").endsWith(".cfg.json"))
-                    graph_type = "cfg";
-                else if(cmdline.getOptionValue("filename").endsWith(".dom.json"))
-                    graph_type = "dom";
-                else if(cmdline.getOptionValue("filename").endsWith(".cfgfordd.json"))
-                    graph_type = "cfgfordd";
-            }
-
-            if(graph_type == null)
-                graph_type = "UNKNOWN";
-            Graph graph = null;
-            Printer printer = null;
+            if(graph_type == null && cmdline.hasOption("filename"))
+                graph_type = guessType(cmdline.getOptionValue("filename"));
 
-            switch (graph_type) {
-                case "parsetree":
-                    ParseTreeJsonReader reader_pt = new ParseTreeJsonReader();
-                    graph = reader_pt.read(reader);
-                    printer = new ASTDotPrint((ParseTree) graph, new PrintWriter(System.out));
-                    break;
-                case "ast":
-                    ASTJsonReader reader_ast = new ASTJsonReader();
-                    graph = reader_ast.read(reader);
-                    printer = new ASTDotPrint((AST) graph, new PrintWriter(System.out));
-                    break;
-                case "astdyn":
-                    ASTDynamicJsonReader reader_astdyn = new ASTDynamicJsonReader();
-                    graph = reader_astdyn.read(reader);
-                    printer = new ASTDynamicDotPrint((ASTDynamic) graph, new PrintWriter(System.out));
-                    break;
-                case "cfg":
-                    CFGJsonReader reader_cfg = new CFGJsonReader();
-                    graph = reader_cfg.read(reader);
-                    printer = new ASTDotPrint((CFG) graph, new PrintWriter(System.out));
-                    break;
-                case "dom":
-                    DOMJsonReader reader_dom = new DOMJsonReader();
-                    graph = reader_dom.read(reader);
-                    printer = new ASTDotPrint((Dominator) graph, new PrintWriter(System.out));
-                    break;
-                case "cfgfordd":
-                    CFGforDDJsonReader reader_cfgfordd = new CFGforDDJsonReader();
-                    graph = reader_cfgfordd.read(reader);
-                    printer = new CFGforDDDotPrint((CFGforDD) graph, new PrintWriter(System.out));
-                    break;
-                default:
-                    System.err.println("Unknown graph type.\nPlease specify a valid type (parsetree, ast, astdyn, cfg or cfgfordd)");
-                    System.exit(1);
+            Printer printer = dotPrinter(graph_type, reader, cmdline.getOptionValue("filename"), new PrintWriter(System.out));
+            if(printer == null) {
+                System.err.println("Unknown graph type.\nPlease specify a valid type (parsetree, ast, astdyn, cfg or cfgfordd)");
+                System.exit(1);
             }
             printer.print();
         }
@@ -139,6 +92,65 @@ public class JSONtoDOT {
 
     }
 
+    // Graph type from the file extension, null if unknown
+    public static String guessType(String filename) {
+        if(filename.endsWith(".parsetree.json"))
+            return "parsetree";
+        else if(filename.endsWith(".compact.json") || filename.endsWith(".ast.json"))
+            return "ast";
+        else if(filename.endsWith(".astdyn.json"))
+            return "astdyn";
+        else if(filename.endsWith(".cfg.json"))
+            return "cfg";
+        else if(filename.endsWith(".dom.json"))
+            return "dom";
+        else if(filename.endsWith(".cfgfordd.json"))
+            return "cfgfordd";
+        else if(filename.endsWith(".ast.bin"))
+            return "ast";
+        else if(filename.endsWith(".astdyn.bin"))
+            return "astdyn";
+        else if(filename.endsWith(".cfg.bin"))
+            return "cfg";
+        return null;
+    }
+
+    // Printer of the graph read from reader, or from filename for binary graphs, null if the type is unknown
+    public static Printer dotPrinter(String graph_type, BufferedReader reader, String filename, PrintWriter out) throws IOException {
+        // Binary graphs are read from the file, not from a text reader
+        boolean binary = filename != null && GraphBinaryReader.isBinary(filename);
+        Graph graph;
+
+        switch (graph_type == null ? "UNKNOWN" : graph_type) {
+            case "parsetree":
+                ParseTreeJsonReader reader_pt = new ParseTreeJsonReader();
+                graph = reader_pt.read(reader);
+                return new ASTDotPrint((ParseTree) graph, out);
+            case "ast":
+                ASTJsonReader reader_ast = new ASTJsonReader();
+                graph = binary ? reader_ast.read(filename) : reader_ast.read(reader);
+                return new ASTDotPrint((AST) graph, out);
+            case "astdyn":
+                ASTDynamicJsonReader reader_astdyn = new ASTDynamicJsonReader();
+                graph = binary ? reader_astdyn.read(filename) : reader_astdyn.read(reader);
+                return new ASTDynamicDotPrint((ASTDynamic) graph, out);
+            case "cfg":
+                CFGJsonReader reader_cfg = new CFGJsonReader();
+                graph = binary ? reader_cfg.read(filename) : reader_cfg.read(reader);
+                return new ASTDotPrint((CFG) graph, out);
+            case "dom":
+                DOMJsonReader reader_dom = new DOMJsonReader();
+                graph = reader_dom.read(reader);
+                return new ASTDotPrint((Dominator) graph, out);
+            case "cfgfordd":
+                CFGforDDJsonReader reader_cfgfordd = new CFGforDDJsonReader();
+                graph = reader_cfgfordd.read(reader);
+                return new CFGforDDDotPrint((CFGforDD) graph, out);
+            default:
+                return null;
+        }
+    }
+
     private static void debug(Exception e) {
         System.err.println("\t" + e.getMessage());
         if(cmdline.hasOption("debug")) {
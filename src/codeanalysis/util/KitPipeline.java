@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.polymtl.codeanalysis.model.*;
+import org.polymtl.codeanalysis.reader.ASTJsonReader;
+import org.polymtl.codeanalysis.reader.CFGAndDDJsonReader;
+import org.polymtl.codeanalysis.reader.GraphBinaryReader;
+import org.polymtl.codeanalysis.visitors.ASTtoCFG;
+import org.polymtl.codeanalysis.visitors.CFGtoCFGforDD;
+import org.polymtl.codeanalysis.visitors.PatternSubstitution;
+import org.polymtl.codeanalysis.writer.CFGBinaryPrint;
+import org.polymtl.codeanalysis.writer.CFGJsonPrint;
+import org.polymtl.codeanalysis.writer.CFGforDDJsonPrint;
+import org.polymtl.codeanalysis.writer.Printer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+// One kit through AST -> CFG -> CFGforDD -> eval resolution, in memory
+// The CFG and CFGforDD files are optional sinks, e.g. the CFGforDD read by the external DD tool
+// Kept, the ASTs and CFGs of the kit are used by the resolution instead of the files, only the DD is read
+// AnalysisServer "resolvekit" runs the files of a kit already written by FormatForDD this way
+//   KitPipeline kit = new KitPipeline(kitName, inDirAst, inDirDd + "/cfg", true);
+//   kit.addSink(KitPipeline.fileSink(inDirDd + "/cfg", outDirDd, ".cfg.json"));
+//   kit.translate(files);                     // Then the DD tool writes inDirDd/dd/kitsDd_<kit>.php.cfg.json
+//   PatternSubstitution resolver = kit.resolve(file, inDirDd);
+// CFG ids are unique in the kit and depend on the order of the translated files, as the DD tool sees them
+public class KitPipeline {
+    private static final Logger LOGGER = CustomLogger.getLogger(KitPipeline.class.getName());
+    private static final List<String> INCLUDE_TYPES = Arrays.asList("IncludeStatement", "IncludeOnceStatement", "RequireStatement", "RequireOnceStatement");
+    // Direct includes of each included file by path, length and date, read once while the file is unchanged
+    private static final Map<String, List<String>> includeGraph = new ConcurrentHashMap<>();
+    // Files an include may be read from, besides being in the AST directory, e.g. the root directories of AnalysisServer
+    private static volatile Predicate<String> readable = path -> true;
+
+    // Graphs of a translated file, name is the file without extension, e.g. ./kit/dir/a.php
+    public interface Sink {
+        void write(String name, CFG cfg, CFGforDD cfgForDD) throws Exception;
+    }
+
+    // Same files as FormatForDD, cfgExtension .cfg.json or .cfg.bin, cfgfordd stays in json for the DD tool
+    public static Sink fileSink(String outDirCfg, String outDirDd, String cfgExtension) {
+        return (name, cfg, cfgForDD) -> {
+            File outFileCfg = Paths.get(outDirCfg, name + cfgExtension).toFile();
+            File outFileDd = Paths.get(outDirDd, name + ".cfg.json").toFile();
+            outFileCfg.getAbsoluteFile().getParentFile().mkdirs();
+            outFileDd.getAbsoluteFile().getParentFile().mkdirs();
+            Printer printer = GraphBinaryReader.isBinary(outFileCfg.getName()) ? new CFGBinaryPrint(cfg, outFileCfg) : new CFGJsonPrint(cfg, outFileCfg);
+            printer.print();
+            printer = new CFGforDDJsonPrint(cfgForDD, outFileDd);
+            printer.print();
+        };
+    }
+
+    private final String kitName;
+    private final String inDirAst;
+    private final String kitCfgDir;   // Directory of the CFG files of the kit, written or not
+    private final boolean keep;       // Keep the ASTs and CFGs for the resolution
+    private final ASTtoCFG.IdContext cfgIds = new ASTtoCFG.IdContext();
+    private final ASTJsonReader reader = new ASTJsonReader();
+    private final CFGNodeIndex nodeIndex = new CFGNodeIndex();
+    private final List<Sink> sinks = new ArrayList<>();
+    private final Set<String> translated = new HashSet<>();
+    private final Map<String, AST> asts = new HashMap<>();
+    private final Map<String, CFG> cfgs = new HashMap<>();
+    private final LRUCache<String, CFGWithDD> cfgDDs = new LRUCache<>(16); // CFG with the DD of the kit
+    private String cfgExtension = ".cfg.json"; // Of the file names in the node index
+
+    public KitPipeline(String kitName, String inDirAst, String cfgDir, boolean keep) {
+        this.kitName = kitName;
+        this.inDirAst = inDirAst;
+        this.kitCfgDir = Paths.get(cfgDir, kitName).toString();
+        this.keep = keep;
+    }
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+    public void setCfgExtension(String cfgExtension) {
+        this.cfgExtension = cfgExtension;
+    }
+    public String getKitName() { return kitName; }
+    public CFGNodeIndex getNodeIndex() { return nodeIndex; }
+
+    // Each file, then the files it includes, a file already translated is skipped
+    public void translate(List<String> files) {
+        for(String file : files) {
+            LOGGER.info("---- Reading " + file + "----");
+            try {
+                String name = name(file);
+                AST ast = reader.read(Paths.get(inDirAst, file).toString());
+                List<String> include_files = new ArrayList<>();
+                listIncludedFiles(name, directIncludes(ast), include_files, new HashSet<>());
+
+                // Copy primal file
+                if(translate(name, ast))
+                    LOGGER.info("Writing CFG of " + name + ".cfg.json");
+                // Copy referred files
+                for(String include : include_files) {
+                    File inFile = new File(astFile(inDirAst, include));
+                    if(!inFile.exists() || inFile.isDirectory()) {
+                        LOGGER.warning("No AST found for " + include);
+                        continue;
+                    }
+                    if(!translated.contains(include) && translate(include, reader.read(inFile.toString())))
+                        LOGGER.info("Writing CFG of " + include);
+                }
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                LOGGER.severe("Failed - " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean translate(String name, AST ast) throws Exception {
+        if(!translated.add(name))
+            return false;
+        CFG cfg = new ASTtoCFG(ast, cfgIds).visit();
+        nodeIndex.add(CFGNodeIndex.relativize(kitCfgDir, Paths.get(kitCfgDir, "..", name + cfgExtension).toString()), cfg);
+        if(keep) {
+            asts.put(key(name), ast);
+            cfgs.put(key(name), cfg);
+        }
+        if(!sinks.isEmpty()) {
+            CFGforDD cfgForDD = new CFGtoCFGforDD(cfg).visit();
+            for(Sink sink : sinks)
+                sink.write(name, cfg, cfgForDD);
+        }
+        return true;
+    }
+
+    // Kept AST of a translated file, by AST or CFG file name, e.g. ./kit/dir/a.php.ast.json.gz, else null
+    public AST getAst(String file) {
+        return asts.get(key(file));
+    }
+
+    // Kept CFG of a translated file, else null
+    public CFG getCfg(String file) {
+        return cfgs.get(key(file));
+    }
+
+    // Kept CFG of a file of the node index, relative to the kit CFG directory, else null
+    public CFG getIndexedCfg(String indexed) {
+        return getCfg(Paths.get(".", kitName, indexed).toString());
+    }
+
+    // Kept CFG with the DD of the kit read on top, shared and read-only like the file cache, else null
+    public CFGWithDD getCfgDD(String file, String ddFile) throws IOException {
+        CFGWithDD cfgdd = cfgDDs.get(key(file));
+        if(cfgdd == null) {
+            CFG cfg = getCfg(file);
+            if(cfg == null)
+                return null;
+            cfgdd = new CFGAndDDJsonReader().read_dd(cfg, ddFile);
+            cfgDDs.put(key(file), cfgdd);
+        }
+        return cfgdd;
+    }
+
+    // Resolution of a translated file, the CFGs of the kit are taken from the pipeline
+    public PatternSubstitution resolve(String file, String inDirDd) {
+        AST ast = getAst(file);
+        if(ast == null)
+            throw new IllegalArgumentException("File not translated by the pipeline : " + file);
+        PatternSubstitution resolver = new PatternSubstitution();
+        resolver.setPipeline(this);
+        resolver.visit(ast, file, inDirAst, inDirDd);
+        return resolver;
+    }
+
+    private static String name(String file) {
+        return file.replace(".ast.json.gz", "").replace(".ast.json", "").replace(".ast.bin", "")
+                .replace(".cfg.json", "").replace(".cfg.bin", "");
+    }
+    // Same key for ./kit/dir/../a.php and ./kit/a.php
+    private static String key(String file) {
+        return "." + File.separator + Paths.get(name(file)).normalize();
+    }
+
+    // Includes read again on next use
+    public static void invalidate() {
+        includeGraph.clear();
+    }
+
+    public static void setReadable(Predicate<String> filter) {
+        readable = filter;
+    }
+    public static boolean isReadable(String path) {
+        return readable.test(path);
+    }
+
+    // AST file of a file name, e.g. ./kit/dir/a.php, null if it is outside of the AST directory or not readable
+    public static String astFile(String inDirAst, String name) {
+        String file = Paths.get(inDirAst, name + ".ast.json.gz").toString();
+        Path dir = Paths.get(inDirAst).toAbsolutePath().normalize();
+        if(!Paths.get(file).toAbsolutePath().normalize().startsWith(dir) || !readable.test(file))
+            return null;
+        return file;
+    }
+
+    // Each include after its own includes, an include cycle is followed once
+    // An include is named from the directory of the file including it, e.g. ./kit/dir/inc.php
+    private void listIncludedFiles(String name, List<String> includes, List<String> include_list, Set<String> visiting) {
+        for(String include : includes) {
+            String file = "." + File.separator + Paths.get(Paths.get(name).getParent().toString(), include).normalize();
+            if(astFile(inDirAst, file) == null) {
+                LOGGER.warning("Include outside of the AST directory or not readable : " + include);
+                continue;
+            }
+            if(visiting.add(file)) {
+                listIncludedFiles(file, includedFiles(astFile(inDirAst, file)), include_list, visiting);
+                visiting.remove(file);
+            }
+            include_list.add(file);
+        }
+    }
+
+    private static List<String> includedFiles(String astFile) {
+        if(!new File(astFile).isFile())
+            return Collections.emptyList(); // Reported by translate
+        return includeGraph.computeIfAbsent(ContentCache.fileKey(astFile), key -> {
+            try {
+                return directIncludes(new ASTJsonReader().read(astFile));
+            } catch (IOException e) {
+                LOGGER.severe("Cannot read included file " + astFile);
+                return Collections.emptyList();
+            }
+        });
+    }
+
+    private static List<String> directIncludes(AST ast) {
+        List<String> includes = new ArrayList<>();
+        for(Integer nodeId : ast.getTypeTable().keySet()) {
+            if(INCLUDE_TYPES.contains(ast.getType(nodeId))) {
+                if (Arrays.asList("StringLiteral", "StringExpression").contains(ast.getType(ast.getChildren(nodeId).get(0))))
+                    includes.add(ast.getImage(ast.getChildren(nodeId).get(0)));
+                else
+                    LOGGER.warning("Include expr is : " + ast.getType(ast.getChildren(nodeId).get(0)));
+            }
+        }
+        return includes;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded least-recently-used cache, safe to share between threads
+public class LRUCache<K, V> {
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity;
+    private long hits = 0;
+    private long misses = 0;
+
+    public LRUCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if(value == null)
+            misses++;
+        else
+            hits++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if(capacity <= 0)
+            return;
+        entries.put(key, value);
+        trim();
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        trim();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while(entries.size() > Math.max(capacity, 0) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized int getCapacity() { return capacity; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    @Override
+    public synchronized String toString() {
+        return "hits " + hits + ", misses " + misses + ", size " + entries.size() + "/" + capacity;
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.polymtl.codeanalysis.exceptions.CodeAnalysisException;
+import org.polymtl.codeanalysis.model.ASTDynamic;
+import org.polymtl.codeanalysis.reader.ASTDynamicJsonReader;
+import org.polymtl.codeanalysis.reader.GraphBinaryReader;
+import org.polymtl.codeanalysis.writer.ASTDynamicBinaryPrint;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+// Classes of the extracted evals (MO), identical and parametric, with their counts
+// With a directory, the store outlives the run and a later run continues the same class numbering
+//   ident.idx, param.idx : hash -> class ids (memory-mapped)
+//   ident.n, param.n     : class id -> count, param_ident.n : (parametric id, identical id) -> count
+//   ident/, param/       : representative of each class, read when a hash matches
+//   payload_sizes.bin    : payload size of each eval, files.txt : files already classified
+// Changes are kept on the heap until commit, which writes them to commit.jsonl, forces it, then applies them to
+// the files above : a store opened after a crash replays a complete commit and drops an incomplete one
+public class MOStore implements Closeable {
+    private static final Logger LOGGER = CustomLogger.getLogger(MOStore.class.getName());
+    private static final String EXTENSION = ".astdyn" + GraphBinaryReader.EXTENSION;
+    private static final String JOURNAL = "commit.jsonl";
+    private static final String COMMIT = "[\"commit\"]";
+
+    // Open addressing table of (long key, int value) pairs, mapped from a file or on the heap
+    // A key may hold several values, as hashes may collide
+    // A mapped table only holds committed entries, the others are pending until apply
+    static class Index {
+        private static final int MAGIC   = 0x4f414d49; // "OAMI"
+        private static final int VERSION = 1;
+        private static final int HEADER  = 16; // magic, version, capacity, size
+        private static final int SLOT    = 16; // key, value + 1 (0 when empty), unused
+
+        interface Entry {
+            void accept(long key, int value);
+        }
+
+        private final File file; // Null on the heap
+        private ByteBuffer buffer;
+        private int capacity;
+        private int size;
+        private final Map<Long, Integer> pendingPut = new LinkedHashMap<>();
+        private final Map<Long, IntList> pendingAdd = new LinkedHashMap<>();
+        private int pendingSize = 0; // Keys put or values added, missing from the table
+
+        Index(File file) throws IOException {
+            this.file = file;
+            if(file != null && file.exists()) {
+                buffer = map(file, file.length());
+                if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                    throw new CodeAnalysisException("Not a MO store index, or another version : " + file);
+                capacity = buffer.getInt(8);
+                size = buffer.getInt(12);
+            }
+            else {
+                buffer = create(file, 1 << 10);
+                capacity = 1 << 10;
+            }
+        }
+
+        private static ByteBuffer create(File file, int capacity) throws IOException {
+            long length = HEADER + (long) capacity * SLOT;
+            ByteBuffer created = (file == null) ? ByteBuffer.allocate((int) length) : map(file, length);
+            created.putInt(0, MAGIC);
+            created.putInt(4, VERSION);
+            created.putInt(8, capacity);
+            created.putInt(12, 0);
+            return created;
+        }
+
+        private static MappedByteBuffer map(File file, long length) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            }
+        }
+
+        private int home(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (capacity - 1);
+        }
+        private long key(int slot) { return buffer.getLong(HEADER + slot * SLOT); }
+        private int value(int slot) { return buffer.getInt(HEADER + slot * SLOT + 8) - 1; }
+        private boolean empty(int slot) { return buffer.getInt(HEADER + slot * SLOT + 8) == 0; }
+
+        // Values of the key, in the order they were added
+        int[] values(long key) {
+            IntList found = new IntList();
+            for(int slot = home(key) ; !empty(slot) ; slot = (slot + 1) & (capacity - 1))
+                if(key(slot) == key)
+                    found.addInt(value(slot));
+            IntList pending = pendingAdd.get(key);
+            if(pending != null)
+                for(int i = 0 ; i < pending.size() ; i++)
+                    found.addInt(pending.getInt(i));
+            int[] values = found.toIntArray();
+            Arrays.sort(values); // Class ids grow with time, probing may wrap around the table
+            return values;
+        }
+
+        int get(long key, int missing) {
+            Integer pending = pendingPut.get(key);
+            return (pending != null) ? pending : committed(key, missing);
+        }
+
+        private int committed(long key, int missing) {
+            for(int slot = home(key) ; !empty(slot) ; slot = (slot + 1) & (capacity - 1))
+                if(key(slot) == key)
+                    return value(slot);
+            return missing;
+        }
+
+        void put(long key, int value) throws IOException {
+            if(file == null) {
+                apply(key, value);
+                return;
+            }
+            if(!pendingPut.containsKey(key) && committed(key, -1) == -1)
+                pendingSize++;
+            pendingPut.put(key, value);
+        }
+
+        void add(long key, int value) throws IOException {
+            if(file == null) {
+                append(key, value);
+                return;
+            }
+            pendingAdd.computeIfAbsent(key, k -> new IntList()).addInt(value);
+            pendingSize++;
+        }
+
+        boolean isPending() {
+            return pendingSize > 0 || !pendingPut.isEmpty();
+        }
+
+        // Pending entries, as written to the commit journal
+        void pending(String name, List<JSONArray> lines) {
+            for(Map.Entry<Long, IntList> entry : pendingAdd.entrySet())
+                for(int i = 0 ; i < entry.getValue().size() ; i++)
+                    lines.add(new JSONArray().put(name).put("add").put(entry.getKey()).put(entry.getValue().getInt(i)));
+            for(Map.Entry<Long, Integer> entry : pendingPut.entrySet())
+                lines.add(new JSONArray().put(name).put("put").put(entry.getKey()).put(entry.getValue()));
+        }
+
+        // Pending entries applied from the commit journal
+        void clearPending() {
+            pendingAdd.clear();
+            pendingPut.clear();
+            pendingSize = 0;
+            force();
+        }
+
+        // Same table whether the entry was already applied or not, for the replay of a commit
+        void applyAdd(long key, int value) throws IOException {
+            for(int slot = home(key) ; !empty(slot) ; slot = (slot + 1) & (capacity - 1))
+                if(key(slot) == key && value(slot) == value)
+                    return;
+            append(key, value);
+        }
+        void apply(long key, int value) throws IOException {
+            for(int slot = home(key) ; !empty(slot) ; slot = (slot + 1) & (capacity - 1))
+                if(key(slot) == key) {
+                    buffer.putInt(HEADER + slot * SLOT + 8, value + 1);
+                    return;
+                }
+            append(key, value);
+        }
+
+        private void append(long key, int value) throws IOException {
+            if(2 * (size + 1) > capacity)
+                grow();
+            int slot = home(key);
+            while(!empty(slot))
+                slot = (slot + 1) & (capacity - 1);
+            buffer.putLong(HEADER + slot * SLOT, key);
+            buffer.putInt(HEADER + slot * SLOT + 8, value + 1);
+            buffer.putInt(12, ++size);
+        }
+
+        void forEach(Entry entry) {
+            for(int slot = 0 ; slot < capacity ; slot++)
+                if(!empty(slot))
+                    entry.accept(key(slot), pendingPut.getOrDefault(key(slot), value(slot)));
+            for(Map.Entry<Long, Integer> pending : pendingPut.entrySet())
+                if(committed(pending.getKey(), -1) == -1)
+                    entry.accept(pending.getKey(), pending.getValue());
+            for(Map.Entry<Long, IntList> pending : pendingAdd.entrySet())
+                for(int i = 0 ; i < pending.getValue().size() ; i++)
+                    entry.accept(pending.getKey(), pending.getValue().getInt(i));
+        }
+
+        int size() { return size + pendingSize; }
+
+        // Rehashed in a new file, renamed over the old one once complete
+        private void grow() throws IOException {
+            File tmp = (file == null) ? null : new File(file.getPath() + ".tmp");
+            if(tmp != null)
+                tmp.delete(); // Left by an interrupted run
+            ByteBuffer old = buffer;
+            int oldCapacity = capacity;
+            buffer = create(tmp, capacity * 2);
+            capacity *= 2;
+            size = 0;
+            for(int slot = 0 ; slot < oldCapacity ; slot++) {
+                int value = old.getInt(HEADER + slot * SLOT + 8);
+                if(value != 0)
+                    append(old.getLong(HEADER + slot * SLOT), value - 1);
+            }
+            if(file != null) {
+                force();
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        void force() {
+            if(buffer instanceof MappedByteBuffer)
+                ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private final File dir; // Null when kept in memory only
+    private final Index identIndex;
+    private final Index paramIndex;
+    private final Index identN;
+    private final Index paramN;
+    private final Index paramIdentN;
+    private final Map<Integer, ASTDynamic> identMO = new HashMap<>(); // Representatives read or added
+    private final Map<Integer, ASTDynamic> paramMO = new HashMap<>();
+    private final IntList payloadSizes = new IntList();
+    private final Set<String> files = new HashSet<>();
+    private final IntList pendingSizes = new IntList(); // Side file entries since the last commit
+    private final List<String> pendingFiles = new ArrayList<>();
+    private final List<File> pendingRepresentatives = new ArrayList<>();
+
+    public MOStore() throws IOException {
+        this(null);
+    }
+
+    public MOStore(File dir) throws IOException {
+        this.dir = dir;
+        if(dir != null) {
+            new File(dir, "ident").mkdirs();
+            new File(dir, "param").mkdirs();
+        }
+        identIndex  = new Index(file("ident.idx"));
+        paramIndex  = new Index(file("param.idx"));
+        identN      = new Index(file("ident.n"));
+        paramN      = new Index(file("param.n"));
+        paramIdentN = new Index(file("param_ident.n"));
+        if(dir == null)
+            return;
+
+        recover();
+        File sizes = file("payload_sizes.bin");
+        if(sizes.exists())
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sizes)))) {
+                for(long i = sizes.length() / 4 ; i > 0 ; i--)
+                    payloadSizes.add(in.readInt());
+            }
+        File list = file("files.txt");
+        if(list.exists())
+            files.addAll(Files.readAllLines(list.toPath(), StandardCharsets.UTF_8));
+        LOGGER.info("MO store " + dir + " : " + identN.size() + " identical, " + paramN.size() + " parametric classes, "
+                + files.size() + " files");
+    }
+
+    private File file(String name) {
+        return (dir == null) ? null : new File(dir, name);
+    }
+
+    public int[] getIdenticalCandidates(long hash) { return identIndex.values(hash); }
+    public int[] getParametricCandidates(long shapeHash) { return paramIndex.values(shapeHash); }
+    public ASTDynamic getIdentical(int id) { return representative(identMO, "ident", id); }
+    public ASTDynamic getParametric(int id) { return representative(paramMO, "param", id); }
+    public int getIdenticalN(int id) { return identN.get(id, 0); }
+    public int getParametricN(int id) { return paramN.get(id, 0); }
+    public int getIdenticalSize() { return identN.size(); }
+    public int getParametricSize() { return paramN.size(); }
+    public IntList getPayloadSizes() { return payloadSizes; }
+
+    // New class, numbered after the existing ones, the representative is kept as is
+    public int addIdentical(long hash, ASTDynamic mo) throws IOException {
+        return addClass(identIndex, identN, identMO, "ident", hash, mo);
+    }
+    public int addParametric(long shapeHash, ASTDynamic mo) throws IOException {
+        return addClass(paramIndex, paramN, paramMO, "param", shapeHash, mo);
+    }
+    private int addClass(Index index, Index n, Map<Integer, ASTDynamic> mos, String kind, long hash, ASTDynamic mo) throws IOException {
+        int id = n.size();
+        if(dir != null) { // Left over by an uncommitted class of a crashed run, or written again
+            File representative = new File(new File(dir, kind), id + EXTENSION);
+            new ASTDynamicBinaryPrint(mo, representative).print();
+            pendingRepresentatives.add(representative);
+        }
+        mos.put(id, mo);
+        index.add(hash, id);
+        n.put(id, 0);
+        return id;
+    }
+
+    // Count after this eval
+    public int incrementIdentical(int id) throws IOException {
+        int count = identN.get(id, 0) + 1;
+        identN.put(id, count);
+        return count;
+    }
+    public int incrementParametric(int id) throws IOException {
+        int count = paramN.get(id, 0) + 1;
+        paramN.put(id, count);
+        return count;
+    }
+    public void incrementParametricIdentical(int paramId, int identId) throws IOException {
+        long key = ((long) paramId << 32) | (identId & 0xFFFFFFFFL);
+        paramIdentN.put(key, paramIdentN.get(key, 0) + 1);
+    }
+
+    // Identical class -> count, for each parametric class
+    public List<HashMap<Integer, Integer>> getParametricIdentical() {
+        List<HashMap<Integer, Integer>> counts = new ArrayList<>();
+        for(int i = 0 ; i < paramN.size() ; i++)
+            counts.add(new HashMap<>());
+        paramIdentN.forEach((key, value) -> counts.get((int) (key >>> 32)).put((int) key, value));
+        return counts;
+    }
+
+    public void addPayloadSize(int size) throws IOException {
+        payloadSizes.add(size);
+        if(dir != null)
+            pendingSizes.add(size);
+    }
+
+    public boolean isClassified(String file) {
+        return files.contains(file);
+    }
+    public void addClassified(String file) throws IOException {
+        if(files.add(file) && dir != null)
+            pendingFiles.add(file);
+    }
+
+    public boolean isPersistent() {
+        return dir != null;
+    }
+
+    private ASTDynamic representative(Map<Integer, ASTDynamic> mos, String kind, int id) {
+        ASTDynamic mo = mos.get(id);
+        if(mo == null && dir != null) {
+            try {
+                mo = new ASTDynamicJsonReader().read(new File(new File(dir, kind), id + EXTENSION).getPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mos.put(id, mo);
+        }
+        return mo;
+    }
+
+    // Changes since the last commit made durable together, a crash keeps all of them or none
+    public void commit() throws IOException {
+        if(dir == null || (pendingSizes.size() == 0 && pendingFiles.isEmpty() && pendingRepresentatives.isEmpty()
+                && !identIndex.isPending() && !paramIndex.isPending() && !identN.isPending() && !paramN.isPending()
+                && !paramIdentN.isPending()))
+            return;
+        for(File representative : pendingRepresentatives)
+            sync(representative);
+
+        File sizes = file("payload_sizes.bin");
+        File list = file("files.txt");
+        List<JSONArray> lines = new ArrayList<>();
+        lines.add(new JSONArray().put("payload_sizes.bin").put(sizes.length()).put("files.txt").put(list.length()));
+        identIndex.pending("ident.idx", lines);
+        paramIndex.pending("param.idx", lines);
+        identN.pending("ident.n", lines);
+        paramN.pending("param.n", lines);
+        paramIdentN.pending("param_ident.n", lines);
+        for(int i = 0 ; i < pendingSizes.size() ; i++)
+            lines.add(new JSONArray().put("size").put(pendingSizes.getInt(i)));
+        for(String f : pendingFiles)
+            lines.add(new JSONArray().put("file").put(f));
+
+        File journal = file(JOURNAL);
+        try (FileOutputStream out = new FileOutputStream(journal)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for(JSONArray line : lines)
+                writer.write(line.toString() + "\n");
+            writer.flush();
+            out.getFD().sync();
+            writer.write(COMMIT + "\n"); // Marker written once the entries are on disk
+            writer.flush();
+            out.getFD().sync();
+        }
+        apply(lines);
+        pendingSizes.clear();
+        pendingFiles.clear();
+        pendingRepresentatives.clear();
+        journal.delete();
+    }
+
+    // Journal entries written to the files, from the committed lengths of the side files so that it may run twice
+    private void apply(List<JSONArray> lines) throws IOException {
+        JSONArray lengths = lines.get(0);
+        truncate(file("payload_sizes.bin"), lengths.getLong(1));
+        truncate(file("files.txt"), lengths.getLong(3));
+        try (FileOutputStream sizesFile = new FileOutputStream(file("payload_sizes.bin"), true);
+             FileOutputStream listFile = new FileOutputStream(file("files.txt"), true)) {
+            DataOutputStream sizesOut = new DataOutputStream(new BufferedOutputStream(sizesFile));
+            Writer listOut = new BufferedWriter(new OutputStreamWriter(listFile, StandardCharsets.UTF_8));
+            for(JSONArray line : lines.subList(1, lines.size())) {
+                switch (line.getString(0)) {
+                    case "size":
+                        sizesOut.writeInt(line.getInt(1));
+                        break;
+                    case "file":
+                        listOut.write(line.getString(1) + "\n");
+                        break;
+                    default:
+                        Index index = index(line.getString(0));
+                        if(line.getString(1).equals("add"))
+                            index.applyAdd(line.getLong(2), line.getInt(3));
+                        else
+                            index.apply(line.getLong(2), line.getInt(3));
+                }
+            }
+            sizesOut.flush();
+            listOut.flush();
+            sizesFile.getFD().sync();
+            listFile.getFD().sync();
+        }
+        for(Index index : new Index[]{identIndex, paramIndex, identN, paramN, paramIdentN})
+            index.clearPending();
+    }
+
+    // A complete commit journal left by a crash is applied again, an incomplete one was never applied
+    private void recover() throws IOException {
+        File journal = file(JOURNAL);
+        if(!journal.exists())
+            return;
+        List<JSONArray> lines = new ArrayList<>();
+        boolean committed = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.equals(COMMIT)) {
+                    committed = true;
+                    break;
+                }
+                lines.add(new JSONArray(line));
+            }
+        } catch (JSONException e) {
+            committed = false;
+        }
+        if(committed) {
+            LOGGER.warning("MO store " + dir + " : applying the last commit again, interrupted by a crash");
+            apply(lines);
+        }
+        else
+            LOGGER.warning("MO store " + dir + " : dropping the changes after the last commit, interrupted by a crash");
+        journal.delete();
+    }
+
+    private Index index(String name) {
+        switch (name) {
+            case "ident.idx":     return identIndex;
+            case "param.idx":     return paramIndex;
+            case "ident.n":       return identN;
+            case "param.n":       return paramN;
+            case "param_ident.n": return paramIdentN;
+            default: throw new CodeAnalysisException("Unknown MO store index in " + JOURNAL + " : " + name);
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        if(!file.exists())
+            return;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            if(channel.size() > length)
+                channel.truncate(length);
+        }
+    }
+
+    private static void sync(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.polymtl.codeanalysis.exceptions.BudgetExceededException;
+
+// Limits on the eval resolution of one file, shared with the nested resolutions of its payloads
+// A limit of 0 is unlimited. Apart from the time, a file always stops at the same point
+public class ResolutionBudget {
+    public static final String TIME    = "Time";
+    public static final String DECODED = "DecodedBytes";
+    public static final String DEPTH   = "ParseDepth";
+    public static final String NODES   = "Nodes";
+
+    private final long maxMillis;
+    private final long maxDecodedBytes; // Bytes produced by the decoders and concatenations
+    private final int maxDepth;         // Payloads parsed inside payloads
+    private final long maxNodes;        // Nodes parsed from payloads or imported by the dataflow
+    private final long start;
+    private long decodedBytes = 0;
+    private long nodes = 0;
+    private String exceeded = null;
+
+    public ResolutionBudget(long maxMillis, long maxDecodedBytes, int maxDepth, long maxNodes) {
+        this(maxMillis, maxDecodedBytes, maxDepth, maxNodes, System.nanoTime());
+    }
+    private ResolutionBudget(long maxMillis, long maxDecodedBytes, int maxDepth, long maxNodes, long start) {
+        this.maxMillis = maxMillis;
+        this.maxDecodedBytes = maxDecodedBytes;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.start = start;
+    }
+
+    // Same limits, nothing used yet, time counted from now
+    public ResolutionBudget start() {
+        return new ResolutionBudget(maxMillis, maxDecodedBytes, maxDepth, maxNodes, System.nanoTime());
+    }
+
+    public void checkTime() {
+        check();
+        if(maxMillis > 0 && (System.nanoTime() - start) / 1000000 > maxMillis)
+            exceed(TIME, "Resolution time over " + maxMillis + " ms");
+    }
+
+    public void checkDepth(int depth) {
+        check();
+        if(maxDepth > 0 && depth > maxDepth)
+            exceed(DEPTH, "Payload parse depth over " + maxDepth);
+    }
+
+    public void addDecodedBytes(long bytes) {
+        check();
+        decodedBytes += bytes;
+        if(maxDecodedBytes > 0 && decodedBytes > maxDecodedBytes)
+            exceed(DECODED, "Decoded payloads over " + maxDecodedBytes + " bytes");
+    }
+
+    public void addNodes(long count) {
+        check();
+        nodes += count;
+        if(maxNodes > 0 && nodes > maxNodes)
+            exceed(NODES, "Resolved AST over " + maxNodes + " nodes");
+    }
+
+    // Once exceeded, every later check fails the same way
+    private void check() {
+        if(exceeded != null)
+            throw new BudgetExceededException(exceeded, "Budget " + exceeded + " already exceeded");
+    }
+
+    private void exceed(String budget, String message) {
+        exceeded = budget;
+        throw new BudgetExceededException(budget, message);
+    }
+
+    public boolean isExceeded() { return exceeded != null; }
+    public long getDecodedBytes() { return decodedBytes; }
+    public long getRemainingDecodedBytes() {
+        return (maxDecodedBytes > 0) ? Math.max(0, maxDecodedBytes - decodedBytes) : Long.MAX_VALUE;
+    }
+    public long getNodes() { return nodes; }
+
+    @Override
+    public String toString() {
+        return String.format("time %s, decoded bytes %s, parse depth %s, nodes %s",
+                limit(maxMillis, " ms"), limit(maxDecodedBytes, ""), limit(maxDepth, ""), limit(maxNodes, ""));
+    }
+    private static String limit(long max, String unit) {
+        return (max > 0) ? max + unit : "unlimited";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Append-only record of the files aggregated by a run, one JSON line per file, in aggregation order
+// Written in batches, a crash loses at most the last batch and a last line without its new line is dropped on read
+public class ResolutionJournal implements Closeable {
+    private static final Logger LOGGER = CustomLogger.getLogger(ResolutionJournal.class.getName());
+    private static final int BATCH = 100; // Files between two flushes
+
+    // Outcome of a file and the MO classes of its evals
+    public static class Record {
+        public final String file;
+        public final boolean readFailed;
+        public final boolean evalFound;
+        public final String outcome;
+        public final int iterations;
+        public final List<long[]> evals = new ArrayList<>(); // Payload size, identical id, hash, parametric id, shape hash
+
+        public Record(String file, boolean readFailed, boolean evalFound, String outcome, int iterations) {
+            this.file = file;
+            this.readFailed = readFailed;
+            this.evalFound = evalFound;
+            this.outcome = outcome;
+            this.iterations = iterations;
+        }
+
+        public void addEval(int payloadSize, int identical, long hash, int parametric, long shapeHash) {
+            evals.add(new long[]{payloadSize, identical, hash, parametric, shapeHash});
+        }
+
+        String toJson() {
+            JSONArray classes = new JSONArray();
+            for(long[] eval : evals)
+                classes.put(new JSONArray(eval));
+            JSONObject json = new JSONObject()
+                    .put("file", file)
+                    .put("readFailed", readFailed)
+                    .put("evalFound", evalFound)
+                    .put("iterations", iterations)
+                    .put("evals", classes);
+            if(outcome != null)
+                json.put("outcome", outcome);
+            return json.toString();
+        }
+
+        static Record fromJson(String line) throws JSONException {
+            JSONObject json = new JSONObject(line);
+            Record record = new Record(json.getString("file"), json.getBoolean("readFailed"), json.getBoolean("evalFound"),
+                    json.optString("outcome", null), json.getInt("iterations"));
+            JSONArray classes = json.getJSONArray("evals");
+            for(int i = 0 ; i < classes.length() ; i++) {
+                JSONArray eval = classes.getJSONArray(i);
+                record.evals.add(new long[]{eval.getLong(0), eval.getLong(1), eval.getLong(2), eval.getLong(3), eval.getLong(4)});
+            }
+            return record;
+        }
+    }
+
+    private final FileOutputStream file;
+    private final Writer out;
+    private int pending = 0;
+
+    // Appends to the records kept by read, or starts a new journal
+    public ResolutionJournal(File file, boolean append) throws IOException {
+        this.file = new FileOutputStream(file, append);
+        out = new BufferedWriter(new OutputStreamWriter(this.file, StandardCharsets.UTF_8));
+    }
+
+    // Complete records, ended by a new line, the file is cut after the last one so that appending continues on a new line
+    // A record cut by a crash is dropped even if it parses, e.g. when a flush ended right before its new line
+    public static List<Record> read(File file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if(!file.exists())
+            return records;
+        long complete = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while((b = in.read()) != -1) {
+                if(b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                try {
+                    records.add(Record.fromJson(new String(line.toByteArray(), StandardCharsets.UTF_8)));
+                } catch (JSONException e) {
+                    break;
+                }
+                complete += line.size() + 1;
+                line.reset();
+            }
+        }
+        if(complete < file.length()) {
+            LOGGER.warning("Journal " + file + " ends with an incomplete record, dropped");
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+        return records;
+    }
+
+    public void append(Record record) throws IOException {
+        out.write(record.toJson());
+        out.write("\n");
+        if(++pending >= BATCH)
+            flush();
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+        pending = 0;
+    }
+
+    // Records on disk, before the MO store commits their evals
+    public void sync() throws IOException {
+        flush();
+        file.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        out.close();
+    }
+}
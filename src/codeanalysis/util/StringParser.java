@@ -20,7 +20,6 @@ import java.util.regex.Pattern;
 
 public class StringParser {
     public static AST parse(String pCode) throws ASTJsonException, ParseException, IOException, TokenMgrError {
-        File parentDir = null;
         String code = "<?php\n" + ReplaceEscapedHex(pCode);
 
         Php parser = new Php(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8)));
@@ -28,20 +27,19 @@ public class StringParser {
 
         parserTree.jjtAccept(new AnnotateVisitor("#DirectString#"), null);
 
-        File tokenJsonFile = File.createTempFile("tokens", null);
-        PrintWriter tokenJsonWriter = new PrintWriter(tokenJsonFile);
-        DumpFlatJsonTokens tokenJsonDumper = new DumpFlatJsonTokens(tokenJsonWriter);
+        // Only the token indices are needed, the token dump itself is discarded
+        DumpFlatJsonTokens tokenJsonDumper = new DumpFlatJsonTokens(new PrintWriter(new NullWriter()));
         parserTree.jjtAccept(tokenJsonDumper, null);
         tokenJsonDumper.close();
 
-        File astJsonFile = File.createTempFile("parsetree", null);
-        PrintWriter astJsonWriter = new PrintWriter(astJsonFile);
+        StringWriter astJsonBuffer = new StringWriter();
+        PrintWriter astJsonWriter = new PrintWriter(astJsonBuffer);
         DumpFlatJsonAST astJsonDumper = new DumpFlatJsonAST(tokenJsonDumper.getTokenIndices(), astJsonWriter);
         parserTree.jjtAccept(astJsonDumper, null);
         astJsonWriter.close();
 
         ParseTreeJsonReader reader = new ParseTreeJsonReader();
-        ParseTree newPt = reader.read(new BufferedReader(new FileReader(astJsonFile)));
+        ParseTree newPt = reader.read(new BufferedReader(new StringReader(astJsonBuffer.toString())));
         for (Integer i : newPt.getNodeIds()) { // Remove <?php line in positions
             Integer[] pos = newPt.getPositions(i);
             if (pos != null) {
@@ -52,12 +50,19 @@ public class StringParser {
                 newPt.setNodePosition(i, pos);
             }
         }
-        ParseTreeToAST newPtTranslator = new ParseTreeToAST(newPt);
-        tokenJsonFile.delete();
-        astJsonFile.delete();
+        ParseTreeToAST newPtTranslator = new ParseTreeToAST(newPt, new ParseTreeToAST.IdContext()); // Ids and variable index local to the payload
         return newPtTranslator.visit();
     }
 
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {}
+        @Override
+        public void flush() {}
+        @Override
+        public void close() {}
+    }
+
     public static String ReplaceEscapedHex(String in) {
         // hexa
         Pattern pattern = Pattern.compile("(\\\\x[0-9A-Fa-f]{1,2})");
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Deflate and inflate of whole payloads, same output and errors as the java.util.zip streams
+// Inflater, Deflater and buffer are kept by each thread and reset between payloads
+// The output is bounded, a decompression bomb stops as soon as it goes over the limit
+public final class Zlib {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final ThreadLocal<Inflater> rawInflater  = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<Inflater> zlibInflater = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<Deflater> zlibDeflater = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<byte[]>   buffer       = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    public static class OutputLimitException extends IOException {
+        private static final long serialVersionUID = 1L;
+        public OutputLimitException(long limit) {
+            super("Output over " + limit + " bytes");
+        }
+    }
+
+    private Zlib() {}
+
+    // Raw deflate data (gzinflate) or zlib data (gzuncompress)
+    public static byte[] inflate(byte[] in, boolean raw, long limit) throws IOException {
+        Inflater inflater = (raw ? rawInflater : zlibInflater).get();
+        byte[] chunk = buffer.get();
+        Output out = new Output(in.length * 4L, limit);
+        inflater.reset();
+        inflater.setInput(in);
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0) {
+                    if (inflater.needsDictionary())
+                        break;
+                    if (inflater.needsInput())
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+                out.write(chunk, n);
+            }
+        } catch (DataFormatException e) {
+            String s = e.getMessage();
+            throw new ZipException(s != null ? s : "Invalid ZLIB data format");
+        } finally {
+            inflater.reset(); // Do not hold on to the input
+        }
+        return out.toByteArray();
+    }
+
+    // Zlib data (gzcompress, gzdeflate), default compression
+    public static byte[] deflate(byte[] in, long limit) throws IOException {
+        Deflater deflater = zlibDeflater.get();
+        byte[] chunk = buffer.get();
+        Output out = new Output(in.length / 2 + 64, limit);
+        deflater.reset();
+        deflater.setInput(in);
+        deflater.finish();
+        try {
+            while (!deflater.finished())
+                out.write(chunk, deflater.deflate(chunk));
+        } finally {
+            deflater.reset();
+        }
+        return out.toByteArray();
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        private final long limit;
+
+        Output(long expected, long limit) {
+            super((int) Math.max(32, Math.min(expected, Math.min(limit, BUFFER_SIZE * 16L))));
+            this.limit = limit;
+        }
+
+        void write(byte[] b, int len) throws OutputLimitException {
+            if (count + (long) len > limit)
+                throw new OutputLimitException(limit);
+            write(b, 0, len);
+        }
+    }
+}
@@ -10,9 +10,10 @@ package org.polymtl.codeanalysis.visitors;
 import org.polymtl.codeanalysis.model.AST;
 import org.polymtl.codeanalysis.model.GraphIndexedVariable;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 
 public class ASTVariableIndexer {
@@ -57,19 +58,37 @@ public class ASTVariableIndexer {
             "Variable"
     );
 
-    private static Integer current_index_scope      = 0;
-    private static Integer current_index_variable   = 0;
-    private static Stack<VariableIndex> global_stack = new Stack<>();
+    // Scope and variable ids with the global variables, share one instance between files for unique ids
+    public static class IndexContext {
+        private Integer current_index_scope      = 0;
+        private Integer current_index_variable   = 0;
+        private Stack<VariableIndex> global_stack = new Stack<>();
+
+        public synchronized void reset() {
+            current_index_variable = 0;
+            current_index_scope = 0;
+            global_stack = new Stack<>();
+        }
+    }
+    private static final IndexContext DEFAULT_INDEX = new IndexContext();
     public static void resetIndex() {
-        current_index_variable = 0;
-        current_index_scope = 0;
-        global_stack = new Stack<>();
+        DEFAULT_INDEX.reset();
+    }
+    static IndexContext defaultIndex() {
+        return DEFAULT_INDEX;
     }
 
-    private List<Integer> visited;
+    private final IndexContext index;
+    private Set<Integer> visited;
     public ASTVariableIndexer(AST astTable) {
-        visited = new ArrayList<>();
-        visit(astTable, astTable.getRoot(), 0, global_stack);
+        this(astTable, DEFAULT_INDEX);
+    }
+    public ASTVariableIndexer(AST astTable, IndexContext index) {
+        this.index = index;
+        visited = new HashSet<>();
+        synchronized (index) {
+            visit(astTable, astTable.getRoot(), 0, index.global_stack);
+        }
     }
 
     public List<String> getVarTypes() {
@@ -84,7 +103,7 @@ public class ASTVariableIndexer {
         String type = astTable.getType(node);
         List<Integer> children = astTable.getChildren(node);
         if (BLOCK_TYPES.contains(type)) {
-            Integer new_scope = ++current_index_scope;
+            Integer new_scope = ++index.current_index_scope;
             astTable.setScopeId(node, new_scope);
             if (children != null) {
                 for (Integer child : children)
@@ -106,7 +125,7 @@ public class ASTVariableIndexer {
                 }
             }
             if(!exist) {
-                Integer id = current_index_variable++;
+                Integer id = index.current_index_variable++;
                 varStack.push(new VariableIndex(varName, id, scope));
                 astTable.setVarId(node, id);
                 astTable.setVarScope(node, scope);
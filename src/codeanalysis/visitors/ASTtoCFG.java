@@ -56,16 +56,38 @@ public class ASTtoCFG {
     protected CFG cfg = null;
     protected ASTNavigatorCl<Integer, String> navigator;
 
-    protected static int iNextNode = 0;
-    protected static int iNextSwitchValue= 0;
-    protected static int iNextTernaryValue= 0;
+    // Id generators, share one instance between translations for unique ids
+    public static class IdContext {
+        private int iNextNode = 0;
+        private int iNextSwitchValue= 0;
+        private int iNextTernaryValue= 0;
+
+        synchronized int nextNode() {
+            return ++iNextNode;
+        }
+        synchronized int nextSwitchValue() {
+            return iNextSwitchValue++;
+        }
+        synchronized int nextTernaryValue() {
+            return iNextTernaryValue++;
+        }
+        public synchronized void reset() {
+            iNextNode = 0;
+        }
+    }
+    private static final IdContext DEFAULT_IDS = new IdContext();
+    protected final IdContext ids;
 
     public void resetIdsGen() {
-        iNextNode = 0;
+        ids.reset();
     }
 
 
     public ASTtoCFG(AST ast) {
+        this(ast, DEFAULT_IDS);
+    }
+    public ASTtoCFG(AST ast, IdContext ids) {
+        this.ids        = ids;
         this.ast        = ast;
         this.cfg        = new CFG();
         cfg.setFilename(ast.getFilename());
@@ -75,7 +97,7 @@ public class ASTtoCFG {
 
 
     private Integer getNewNode() {
-        return ++iNextNode;
+        return ids.nextNode();
     }
 
 
@@ -572,7 +594,7 @@ public class ASTtoCFG {
         if(n_children != 3)
             throw new ASTJsonException("ERROR: A ternary needs 3 children ("+astNodeId+")");
 
-        Integer ternaryId = iNextTernaryValue++;
+        Integer ternaryId = ids.nextTernaryValue();
         Integer startCfgNodeId = getNewNode();
         Integer condCfgNodeId = null;
         Integer endCfgNodeId = getNewNode();
@@ -734,7 +756,7 @@ public class ASTtoCFG {
 
         Integer startNodeId = getNewNode();
         Integer endNodeId = getNewNode();
-        Integer switchId = iNextSwitchValue++;
+        Integer switchId = ids.nextSwitchValue();
         ctx.endId = endNodeId;
         if(ctx.startId == null)
             ctx.startId = startNodeId;
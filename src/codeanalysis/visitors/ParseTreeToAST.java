@@ -11,16 +11,44 @@ import java.util.*;
 public class ParseTreeToAST {
     private ParseTree ptTable = null;
     private AST astTable = null;
-    protected static int iNextNode = 0;
-    protected static int iNextLambda = 0;
     protected ASTNavigatorCl<Integer, String> ptnavigator;
 
+    // Id generators and variable index, share one instance between translations for unique ids
+    public static class IdContext {
+        private int iNextNode = 0;
+        private int iNextLambda = 0;
+        private final ASTVariableIndexer.IndexContext index;
+
+        public IdContext() {
+            this(new ASTVariableIndexer.IndexContext());
+        }
+        public IdContext(ASTVariableIndexer.IndexContext index) {
+            this.index = index;
+        }
+
+        synchronized int nextNode() {
+            return ++iNextNode;
+        }
+        synchronized int nextLambda() {
+            return iNextLambda++;
+        }
+        public synchronized void reset() {
+            iNextNode = 0;
+        }
+    }
+    private static final IdContext DEFAULT_IDS = new IdContext(ASTVariableIndexer.defaultIndex());
+    private final IdContext ids;
+
     public void resetIdsGen() {
-        ASTVariableIndexer.resetIndex();
-        iNextNode = 0;
+        ids.index.reset();
+        ids.reset();
     }
 
     public ParseTreeToAST(ParseTree parAstTable) {
+        this(parAstTable, DEFAULT_IDS);
+    }
+    public ParseTreeToAST(ParseTree parAstTable, IdContext ids) {
+        this.ids = ids;
         astTable = new AST();
         ptTable = parAstTable;
         astTable.setRoot(parAstTable.getRoot());
@@ -66,7 +94,7 @@ public class ParseTreeToAST {
 
 
     private int getNewNode() {
-        return ++iNextNode;
+        return ids.nextNode();
     }
 
     private List<Integer> visitChildren(Integer ptNodeId) {
@@ -879,7 +907,7 @@ public class ParseTreeToAST {
 
     public Integer visit_LAMBDA_FUNCTION_STATEMENT(Integer ptNodeId) {
         Integer newNode = visit_GENERIC(ptNodeId);
-        astTable.setNodeImage(newNode, "#lambda_"+(iNextLambda++));
+        astTable.setNodeImage(newNode, "#lambda_"+ids.nextLambda());
         return newNode;
     }
 
@@ -890,7 +918,7 @@ public class ParseTreeToAST {
 
     public AST visit() throws ASTJsonException {
         visit(ptTable.getRoot());
-        new ASTVariableIndexer(astTable);
+        new ASTVariableIndexer(astTable, ids.index);
         return astTable;
     }
 
@@ -12,12 +12,13 @@ import org.polymtl.codeanalysis.model.*;
 import org.polymtl.codeanalysis.parser.*;
 import org.polymtl.codeanalysis.reader.*;
 import org.polymtl.codeanalysis.util.*;
+import org.polymtl.codeanalysis.writer.ASTDynamicBinaryPrint;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.zip.*;
 
 
 public class PatternSubstitution {
@@ -30,7 +31,30 @@ public class PatternSubstitution {
     private String inDirAst                             = null;
     private String inDirDd                             = null;
     private boolean evalFound                           = false;
+    private boolean fileDependent                       = false; // Resolution used the dataflow of the file
     private ErrorList evalErrors                        = new ErrorList();
+    private ResolutionBudget budget                     = null; // Shared with the resolutions of nested payloads
+    private int depth                                   = 0;    // Payloads parsed above this resolution
+    private int payloadDepth                            = 0;    // Deepest payload parsed by this resolution
+    private final Set<String> dependencies              = new LinkedHashSet<>(); // Dataflow files read, present or not
+    private KitPipeline pipeline                        = null; // ASTs and CFGs of the kit in memory, else read from files
+
+    // Rewrite engine : operands queued by the rules, innermost on top, and operands no rule can reduce
+    private static final int MAX_EVAL_STEPS             = 100000; // Per eval, stops dataflow cycles
+    private final Deque<Integer> worklist               = new ArrayDeque<>();
+    private final Set<Integer> stuck                    = new HashSet<>();
+    private int evalSteps                               = 0;
+    private int iterations                              = 0; // Rule applications in the file
+    private int maxWorklist                             = 0;
+
+    // CFG+DD graphs by (cfg file, dd file) with their length and date, shared by every file of a kit
+    private static final LRUCache<Pair<String, String>, CFGWithDD> cfgDDCache = new LRUCache<>(16);
+    private static final Map<String, CFGNodeIndex> cfgNodeIndexes = new HashMap<>();
+    private static final Set<String> cfgNodeIndexesChecked = new HashSet<>(); // Kits whose index is known up to date
+    // Payloads by content, shared by every file and kit : (decoder, input) -> decoded bytes, payload -> resolved AST
+    private static final ContentCache<byte[]> decodedCache = new ContentCache<>(128L << 20, out -> out.length + 64);
+    private static final ContentCache<ParsedPayload> parsedCache = new ContentCache<>(128L << 20, ParsedPayload::weight);
+    private static ResolutionBudget budgetLimits = new ResolutionBudget(0, 0, 0, 0); // Unlimited unless set
 
     protected Map<Integer, List<Integer>> nodePatternsMatched = new HashMap<>();
     protected Map<Integer, AST> nodeASTResolved = new HashMap<>(); // doesn't handle recursive AST ... create new class ASTDynamic
@@ -45,10 +69,38 @@ public class PatternSubstitution {
         }
     }
 
+    // Outcome of parsing and resolving an eval string, independent of the file unless not cacheable
+    static class ParsedPayload {
+        final ASTDynamic dynamicAst;
+        final List<Exception> errors;
+        final String failure;   // ParseFailed image, null if parsed
+        final String message;
+        final boolean cacheable;
+        long decodedBytes = 0;  // Budget used by the resolution, charged again when reused
+        long nodes = 0;
+        int depth = 1;          // Levels of payloads, this one included
+
+        ParsedPayload(ASTDynamic dynamicAst, List<Exception> errors, boolean cacheable) {
+            this(dynamicAst, errors, null, null, cacheable);
+        }
+        ParsedPayload(ASTDynamic dynamicAst, List<Exception> errors, String failure, String message, boolean cacheable) {
+            this.dynamicAst = dynamicAst;
+            this.errors = errors;
+            this.failure = failure;
+            this.message = message;
+            this.cacheable = cacheable;
+        }
+
+        long weight() { // Rough estimate of the retained heap
+            return 256 + ((dynamicAst == null) ? 0 : 256L * dynamicAst.getNodeIds().size());
+        }
+    }
+
     enum STATUS {
         CHANGE,     // Change occurred, need to re-run
         NOCHANGE,   // No-change, no re-run
-        DONE        // Final change at this stage, no re-run at THIS level
+        DONE,       // Final change at this stage, no re-run at THIS level
+        PENDING     // Operand queued on the worklist, re-run once it is reduced
     }
 
 
@@ -57,6 +109,13 @@ public class PatternSubstitution {
     }
 
     public boolean visit(AST ast, String filename, String inDirAst, String inDirCfg) {
+        return visit(ast, filename, inDirAst, inDirCfg, budgetLimits.start(), 0);
+    }
+
+    private boolean visit(AST ast, String filename, String inDirAst, String inDirCfg, ResolutionBudget budget, int depth) {
+        this.budget = budget;
+        this.depth = depth;
+        this.payloadDepth = 0;
         this.astSub = new ASTDynamic(ast);
         this.ast = new AST(ast);
         this.navigator = new ASTNavigatorCl<>(ast.getSuccTable(), ast.getTypeTable());
@@ -64,23 +123,34 @@ public class PatternSubstitution {
         this.inDirDd = inDirCfg;
         this.inDirAst = inDirAst;
         this.evalErrors = new ErrorList();
+        this.worklist.clear();
+        this.stuck.clear();
+        this.iterations = 0;
+        this.maxWorklist = 0;
+        this.dependencies.clear();
         return visit(ast.getRoot());
     }
 
-    private boolean visit(Integer nodeId) {
+    // Pre-order walk, the children are read once the node is visited as the visit may rewrite them
+    private boolean visit(Integer rootId) {
         boolean matched = false;
-        switch (ast.getType(nodeId)) { // TODO: Remove recursive calls, handle with a loop here
-            case "FunctionCall":
-                visit_FunctionCall_init(nodeId);
-                matched = true;
-                break;
-            default:
-                break;
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(rootId);
+        while(!stack.isEmpty() && !budget.isExceeded()) {
+            Integer nodeId = stack.pop();
+            switch (ast.getType(nodeId)) {
+                case "FunctionCall":
+                    visit_FunctionCall_init(nodeId);
+                    matched = true;
+                    break;
+                default:
+                    break;
+            }
+            List<Integer> children = ast.getChildren(nodeId);
+            if(children != null)
+                for (int child = children.size() - 1 ; child >= 0 ; child--)
+                    stack.push(children.get(child));
         }
-        List<Integer> children = ast.getChildren(nodeId);
-        if(children != null)
-            for (Integer child = 0 ; child < ast.getChildren(nodeId).size() ; child++)
-                matched = visit(ast.getChildren(nodeId).get(child)) || matched;
         return matched;
     }
 
@@ -93,34 +163,91 @@ public class PatternSubstitution {
             return STATUS.NOCHANGE;
         }
 
-        STATUS last_status = STATUS.CHANGE;
-        STATUS return_status = STATUS.CHANGE;
-        while(last_status == STATUS.CHANGE) {
-            last_status = STATUS.NOCHANGE;
-            Integer identifier = ast.getChildren(nodeId).get(0);
-            if(ast.getType(identifier).equals("Id")) {
-                switch (ast.getImage(nodeId)) {
-                    case "eval":
-                        evalFound = true;
-                        try {
-                            last_status = applyRule_eval_FunctionCall_init(nodeId);
-                        } catch (Exception e) {
-                            evalErrors.add(e);
-                            e.printStackTrace();
-                            LOGGER.warning("Error while resolving eval : "+e.getMessage());
-                            return STATUS.NOCHANGE;
-                        }
-                        break;
-                }
-                if(last_status == STATUS.DONE) {
-                    return_status = STATUS.CHANGE;
-                    break;
-                }
-                if(last_status == STATUS.CHANGE)
-                    return_status = STATUS.CHANGE;
-            }
+        Integer identifier = ast.getChildren(nodeId).get(0);
+        if(!ast.getType(identifier).equals("Id") || !"eval".equals(ast.getImage(nodeId)))
+            return STATUS.NOCHANGE;
+
+        evalFound = true;
+        evalSteps = 0;
+        STATUS last_status;
+        try {
+            do { // Until the argument is parsed, or no rule reduces it further
+                step();
+                last_status = applyRule_eval_FunctionCall_init(nodeId);
+                reduce();
+            } while(last_status == STATUS.PENDING);
+        } catch (BudgetExceededException e) {
+            worklist.clear();
+            if(depth > 0)
+                throw e; // Recorded on the eval of the file
+            evalErrors.add(e);
+            Integer failNode = astSub.getNextNodeId();
+            astSub.setNodeType(failNode, "BudgetExceeded");
+            astSub.setNodeImage(failNode, e.getBudget());
+            astSub.addParseEdge(getLastResolution(ast.getChildren(ast.getChildren(nodeId).get(1)).get(0)), failNode);
+            return STATUS.NOCHANGE;
+        } catch (Exception e) {
+            worklist.clear();
+            evalErrors.add(e);
+            e.printStackTrace();
+            LOGGER.warning("Error while resolving eval : "+e.getMessage());
+            return STATUS.NOCHANGE;
+        }
+        return last_status;
+    }
+
+    // Runs the rules of the queued operands, innermost first, without recursion
+    // An operand is popped once its rule returns DONE, CHANGE, or NOCHANGE when it is stuck
+    private void reduce() throws ASTDynamicException {
+        while(!worklist.isEmpty()) {
+            maxWorklist = Math.max(maxWorklist, worklist.size());
+            Integer nodeId = worklist.peek();
+            step();
+            STATUS status = applyRule_operand_eval(nodeId);
+            if(status == STATUS.PENDING)
+                continue;
+            worklist.pop();
+            if(status == STATUS.NOCHANGE)
+                stuck.add(nodeId);
+        }
+    }
+
+    private STATUS applyRule_operand_eval(Integer nodeId) throws ASTDynamicException {
+        switch (ast.getType(nodeId)) {
+            case "Variable":
+                return applyRule_variable_eval(nodeId);
+            case "FunctionCall":
+                return visit_FunctionCall_eval(nodeId);
+            case "BinOP":
+                return visit_BinOP_eval(nodeId);
+            default:
+                return STATUS.DONE;
         }
-        return return_status;
+    }
+
+    // Queues an operand the rule needs reduced, NOCHANGE if no rule can reduce it
+    private STATUS require(Integer nodeId) {
+        if(stuck.contains(nodeId))
+            return STATUS.NOCHANGE;
+        worklist.push(nodeId);
+        return STATUS.PENDING;
+    }
+
+    private void step() throws ASTDynamicException {
+        budget.checkTime();
+        iterations++;
+        if(++evalSteps > MAX_EVAL_STEPS)
+            throw new ASTDynamicException("Eval not resolved after " + MAX_EVAL_STEPS + " rule applications");
+    }
+
+    // Latest resolution of the argument in the dynamic AST, the argument itself if none
+    private Integer getLastResolution(Integer argumentNode) {
+        List<Integer> resolutions = astSub.getDynamicResolution(argumentNode);
+        if(resolutions == null || resolutions.size() == 0)
+            resolutions = astSub.getDataflowResolution(argumentNode);
+        if(resolutions == null || resolutions.size() == 0)
+            return argumentNode;
+        return resolutions.get(resolutions.size()-1);
     }
 
     @SuppressWarnings("fallthrough")
@@ -128,35 +255,34 @@ public class PatternSubstitution {
         Integer argumentList = ast.getChildren(nodeId).get(1);
         Integer firstArgumentNode = ast.getChildren(argumentList).get(0);
         Integer firstArgument = ast.getChildren(firstArgumentNode).get(0);
-        Integer firstArgumentSub = firstArgumentNode;
-        if(astSub.getDynamicResolution(firstArgumentNode) != null && astSub.getDynamicResolution(firstArgumentNode).size() != 0)
-            firstArgumentSub = astSub.getDynamicResolution(firstArgumentNode).get(astSub.getDynamicResolution(firstArgumentNode).size()-1);
-        else if(astSub.getDataflowResolution(firstArgumentNode) != null && astSub.getDataflowResolution(firstArgumentNode).size() != 0)
-            firstArgumentSub = astSub.getDataflowResolution(firstArgumentNode).get(astSub.getDataflowResolution(firstArgumentNode).size()-1);
-
+        Integer firstArgumentSub = getLastResolution(firstArgumentNode);
 
         switch (ast.getType(firstArgument)) {
             case "DecodeFailed":
                 break;
             case "HexLiteral":
                 ast.setNodeType(firstArgument, "StringLiteral");
-                ast.setNodeImage(firstArgument, new String(decodeHexString(ast.getImage(firstArgument))));
+                ast.setNodeImage(firstArgument, new String(getHexByte(firstArgument)));
                 // FALL-THROUGH
             case "StringExpression": // TODO: check for variable
             case "StringLiteral":
                 try {
                     LOGGER.fine("Parse resolved string");
                     astSub.setEvalString(nodeId, StringParser.ReplaceEscapedHex(ast.getImage(firstArgument)));
-                    AST newAST = StringParser.parse( ast.getImage(firstArgument) );
-                    if(newAST.getTypeTable().keySet().size() > 500) { // Probably a web shell, stop looking for eval
-                        LOGGER.info("##WEBSHELL DETECTED##");
-                        astSub.addParseEdge(firstArgumentSub, newAST);
+                    ParsedPayload parsed = resolvePayload(ast.getImage(firstArgument));
+                    if(parsed.failure != null) {
+                        evalErrors.add(new ParseException(parsed.message));
+                        Integer failNode = astSub.getNextNodeId();
+                        astSub.setNodeType(failNode, "ParseFailed");
+                        astSub.setNodeImage(failNode, parsed.failure);
+
+                        astSub.addParseEdge(firstArgumentSub, failNode);
                         return STATUS.NOCHANGE;
                     }
-                    PatternSubstitution substitution = new PatternSubstitution();
-                    substitution.visit(newAST, filename, inDirAst, inDirDd);
-                    this.evalErrors.addAll(substitution.getEvalErrors());
-                    astSub.addParseEdge(firstArgumentSub, substitution.getDynamicAst());
+                    this.evalErrors.addAll(parsed.errors);
+                    astSub.addParseEdge(firstArgumentSub, parsed.dynamicAst);
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(new ParseException("Exception occurred while parsing string - " + e.getMessage()));
                     Integer failNode = astSub.getNextNodeId();
@@ -174,11 +300,9 @@ public class PatternSubstitution {
                 }
                 return STATUS.NOCHANGE;
             case "Variable":
-                return applyRule_variable_eval(firstArgument);
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
             case "BinOP":
-                return visit_BinOP_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Found eval("+ast.getType(firstArgument)+")"));
                 dynamicReplace(firstArgument, "DecodeFailed", "NoLiteral".getBytes());
@@ -186,96 +310,65 @@ public class PatternSubstitution {
         return STATUS.NOCHANGE;
     }
 
+    // One step on a function call of the eval argument, once its identifier is reduced
     @SuppressWarnings("fallthrough")
-    private STATUS visit_FunctionCall_eval(Integer nodeId) throws ASTDynamicException { // eval(FuncCall)
+    private STATUS visit_FunctionCall_eval(Integer nodeId) { // eval(FuncCall)
         if(ast.getChildren(nodeId).size() != 2 || !ast.getType(ast.getChildren(nodeId).get(1)).equals("ArgumentList")) {
             evalErrors.add(new ASTDynamicException("FunctionCall requires an ArgumentList : found" + ast.getType(ast.getChildren(nodeId).get(1))));
             dynamicReplace(nodeId, "VisitFailed", "Exception".getBytes());
             return STATUS.NOCHANGE;
         }
 
-        STATUS last_status = STATUS.CHANGE;
-        STATUS return_status = STATUS.NOCHANGE;
-        while(last_status == STATUS.CHANGE) {
-            Integer identifier = ast.getChildren(nodeId).get(0);
-            String type  = ast.getType(identifier);
-            String image = ast.getImage(identifier);
-            switch(type) {
-                case "DecodeFailed":
-                    last_status = STATUS.NOCHANGE;
-                    break;
-                case "Variable":
-                    last_status = applyRule_variable_eval(identifier);
-                    /* if(last_status != STATUS.CHANGE) {
-                        evalErrors.add(new ASTDataflowException("Found variable func call in eval params"));
-                        dynamicReplace(nodeId, "DecodeFailed", "FuncVarUnknown".getBytes());
-                        last_status = STATUS.NOCHANGE;
-                    }*/
-                    break;
-                case "FunctionCall":
-                    LOGGER.fine("Function identifier is FunctionCall " + image);
-                    last_status = visit_FunctionCall_eval(identifier);
-                    break;
-                case "BinOP":
-                    LOGGER.fine("Function identifier is BinOP " + image);
-                    last_status = visit_BinOP_eval(identifier);
-                    break;
-                case "StringLiteral":
-                case "StringExpression":
-                    image = StringParser.ReplaceEscapedHex(ast.getImage(identifier));
-                    // FALL-THROUGH
-                case "Id":
-                    LOGGER.fine("visit_FunctionCall_eval " + image);
-                    switch (image) {
-                        case "base64_decode":
-                            last_status = applyRule_base64decode_FunctionCall_eval(nodeId);
-                            break;
-                        case "base64_encode":
-                            last_status = applyRule_base64encode_FunctionCall_eval(nodeId);
-                            break;
-                        case "str_rot13":
-                            last_status = applyRule_strrot13_FunctionCall_eval(nodeId);
-                            break;
-                        case "strrev":
-                            last_status = applyRule_strrev_FunctionCall_eval(nodeId);
-                            break;
-                        case "rawurldecode":
-                        case "urldecode":
-                            last_status = applyRule_rawurldecode_FunctionCall_eval(nodeId);
-                            break;
-                        case "gzinflate":
-                            last_status = applyRule_gzinflate_FunctionCall_eval(nodeId);
-                            break;
-                        case "gzdeflate":
-                            last_status = applyRule_gzdeflate_FunctionCall_eval(nodeId);
-                            break;
-                        case "gzcompress":
-                            last_status = applyRule_gzcompress_FunctionCall_eval(nodeId);
-                            break;
-                        case "gzuncompress":
-                            last_status = applyRule_gzuncompress_FunctionCall_eval(nodeId);
-                            break;
-                        default:
-                            evalErrors.add(new ASTDynamicException("Found " + image + " func in eval subtree"));
-                            dynamicReplace(nodeId, "DecodeFailed", "FuncIdUnknown".getBytes());
-                            last_status = STATUS.NOCHANGE;
-                    }
-                    if(last_status == STATUS.DONE) {
-                        return_status = STATUS.CHANGE;
-                        break;
-                    }
-                    if(last_status == STATUS.CHANGE)
-                        return_status = STATUS.CHANGE;
-                    break;
-                default:
-                    evalErrors.add(new ASTDynamicException("Found " + type + " as func identifier"));
-                    dynamicReplace(nodeId, "DecodeFailed", "FuncUnknown".getBytes());
-                    last_status = STATUS.NOCHANGE;
-            }
+        Integer identifier = ast.getChildren(nodeId).get(0);
+        String type  = ast.getType(identifier);
+        String image = ast.getImage(identifier);
+        switch(type) {
+            case "DecodeFailed":
+                return STATUS.NOCHANGE;
+            case "Variable":
+            case "FunctionCall":
+            case "BinOP":
+                LOGGER.fine("Function identifier is " + type + " " + image);
+                return require(identifier);
+            case "StringLiteral":
+            case "StringExpression":
+                image = StringParser.ReplaceEscapedHex(ast.getImage(identifier));
+                // FALL-THROUGH
+            case "Id":
+                LOGGER.fine("visit_FunctionCall_eval " + image);
+                switch (image) {
+                    case "base64_decode":
+                        return applyRule_base64decode_FunctionCall_eval(nodeId);
+                    case "base64_encode":
+                        return applyRule_base64encode_FunctionCall_eval(nodeId);
+                    case "str_rot13":
+                        return applyRule_strrot13_FunctionCall_eval(nodeId);
+                    case "strrev":
+                        return applyRule_strrev_FunctionCall_eval(nodeId);
+                    case "rawurldecode":
+                    case "urldecode":
+                        return applyRule_rawurldecode_FunctionCall_eval(nodeId);
+                    case "gzinflate":
+                        return applyRule_gzinflate_FunctionCall_eval(nodeId);
+                    case "gzdeflate":
+                        return applyRule_gzdeflate_FunctionCall_eval(nodeId);
+                    case "gzcompress":
+                        return applyRule_gzcompress_FunctionCall_eval(nodeId);
+                    case "gzuncompress":
+                        return applyRule_gzuncompress_FunctionCall_eval(nodeId);
+                    default:
+                        evalErrors.add(new ASTDynamicException("Found " + image + " func in eval subtree"));
+                        dynamicReplace(nodeId, "DecodeFailed", "FuncIdUnknown".getBytes());
+                        return STATUS.NOCHANGE;
+                }
+            default:
+                evalErrors.add(new ASTDynamicException("Found " + type + " as func identifier"));
+                dynamicReplace(nodeId, "DecodeFailed", "FuncUnknown".getBytes());
+                return STATUS.NOCHANGE;
         }
-        return return_status;
     }
 
+    // One step on a binary operation of the eval argument, once both children are reduced
     private STATUS visit_BinOP_eval(Integer nodeId) {
         if(ast.getChildren(nodeId).size() != 2) {
             evalErrors.add(new ASTDynamicException("BinOP requires 2 children : found" + ast.getChildren(nodeId).size()));
@@ -283,35 +376,21 @@ public class PatternSubstitution {
             return STATUS.NOCHANGE;
         }
 
-        STATUS last_status = STATUS.CHANGE;
-        STATUS return_status = STATUS.NOCHANGE;
-        while(last_status == STATUS.CHANGE) {
-            Integer leftChild  = ast.getChildren(nodeId).get(0);
-            Integer rightChild = ast.getChildren(nodeId).get(1);
-            last_status = applyRule_child_BinOP_eval(leftChild);
-            if(last_status == STATUS.CHANGE)
-                continue;
-            last_status = applyRule_child_BinOP_eval(rightChild);
-            if(last_status == STATUS.CHANGE)
-                continue;
-
-            switch(ast.getImage(nodeId)) {
-                case ".":
-                    last_status = applyRule_concat_BinOP_eval(nodeId);
-                    if(last_status == STATUS.DONE) {
-                        return_status = STATUS.CHANGE;
-                        break;
-                    }
-                    if(last_status == STATUS.CHANGE)
-                        return_status = STATUS.CHANGE;
-                    break;
-                default:
-                    evalErrors.add(new ASTDynamicException("Found BinOP image (" + ast.getImage(nodeId) + ")"));
-                    dynamicReplace(nodeId, "DecodeFailed", "BinOP".getBytes());
-                    last_status = STATUS.NOCHANGE;
-            }
+        Integer leftChild  = ast.getChildren(nodeId).get(0);
+        Integer rightChild = ast.getChildren(nodeId).get(1);
+        if(applyRule_child_BinOP_eval(leftChild) == STATUS.PENDING)
+            return STATUS.PENDING;
+        if(applyRule_child_BinOP_eval(rightChild) == STATUS.PENDING)
+            return STATUS.PENDING;
+
+        switch(ast.getImage(nodeId)) {
+            case ".":
+                return applyRule_concat_BinOP_eval(nodeId);
+            default:
+                evalErrors.add(new ASTDynamicException("Found BinOP image (" + ast.getImage(nodeId) + ")"));
+                dynamicReplace(nodeId, "DecodeFailed", "BinOP".getBytes());
+                return STATUS.NOCHANGE;
         }
-        return return_status;
     }
 
     private STATUS applyRule_concat_BinOP_eval(Integer nodeId) {
@@ -327,9 +406,12 @@ public class PatternSubstitution {
                         return STATUS.NOCHANGE;
                     case "StringExpression":
                     case "StringLiteral":
-                        String image_left = ast.getImage(leftChild);
-                        String image_right = ast.getImage(rightChild);
-                        dynamicReplace(nodeId, "StringLiteral", (image_left+image_right).getBytes());
+                        byte[] image_left = String.valueOf(ast.getImage(leftChild)).getBytes();
+                        byte[] image_right = String.valueOf(ast.getImage(rightChild)).getBytes();
+                        byte[] image = Arrays.copyOf(image_left, image_left.length + image_right.length);
+                        System.arraycopy(image_right, 0, image, image_left.length, image_right.length);
+                        // The longer operand is extended, only the bytes added to it count, so a chain stays linear
+                        dynamicReplace(nodeId, "StringLiteral", image, Math.min(image_left.length, image_right.length));
                         return STATUS.DONE;
                     default:
                         evalErrors.add(new ASTDynamicException("Cannot decode concat BinOP rightChild: "+ast.getType(rightChild)+""));
@@ -351,12 +433,12 @@ public class PatternSubstitution {
                 break;
             case "HexLiteral":
                 ast.setNodeType(nodeId, "StringLiteral");
-                ast.setNodeImage(nodeId, new String(decodeHexString(ast.getImage(nodeId))));
+                ast.setNodeImage(nodeId, new String(getHexByte(nodeId)));
                 return STATUS.DONE;
             case "Variable":
-                return applyRule_variable_eval(nodeId);
             case "FunctionCall":
-                return visit_FunctionCall_eval(nodeId);
+            case "BinOP": // Nested concatenation
+                return require(nodeId);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode Child BinOP: "+ast.getType(nodeId)+""));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -375,25 +457,26 @@ public class PatternSubstitution {
                 break;
             case "HexLiteral":
                 ast.setNodeType(firstArgument, "StringLiteral");
-                ast.setNodeImage(firstArgument, new String(decodeHexString(ast.getImage(firstArgument))));
+                ast.setNodeImage(firstArgument, new String(getHexByte(firstArgument)));
                 // FALL-THROUGH
             case "StringExpression": // TODO: check for variable
             case "StringLiteral":
                 String in = ast.getImage(firstArgument);
                 if(in == null) in = "";
                 try {
-                    byte[] out = DecodeBase64(in.getBytes());
+                    byte[] out = decodeCached("base64_decode", in.getBytes(), PatternSubstitution::DecodeBase64);
                     dynamicReplace(nodeId, "HexLiteral", out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(new ASTDynamicException("Cannot decode base64_decode("+ast.getType(firstArgument)+") : " + e.getMessage()));
                     dynamicReplace(nodeId, "DecodeFailed", "Bad data".getBytes());
                 }
                 break;
             case "Variable":
-                return applyRule_variable_eval(firstArgument);
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode base64_decode("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -416,7 +499,7 @@ public class PatternSubstitution {
                 dynamicReplace(nodeId, "StringLiteral", out);
                 return STATUS.DONE;
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode base64_encode("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -442,15 +525,16 @@ public class PatternSubstitution {
 
                     dynamicReplace(nodeId, type, out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "Variable":
-                return applyRule_variable_eval(firstArgument);
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode str_rot13("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -472,19 +556,20 @@ public class PatternSubstitution {
                 try {
                     String type = ast.getType(firstArgument);
                     byte[] in = getTokenByte(firstArgument);
-                    byte[] out = DecodeRawUrl(in);
+                    byte[] out = decodeCached("rawurldecode", in, PatternSubstitution::DecodeRawUrl);
 
                     dynamicReplace(nodeId, type, out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "Variable":
-                return applyRule_variable_eval(firstArgument);
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode rawurldecode("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -510,15 +595,16 @@ public class PatternSubstitution {
 
                     dynamicReplace(nodeId, type, out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "Variable":
-                return applyRule_variable_eval(firstArgument);
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode strrev("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -537,17 +623,19 @@ public class PatternSubstitution {
             case "HexLiteral":
                 try {
                     byte[] in = getTokenByte(firstArgument);
-                    byte[] out = InflateGZ(in);
+                    byte[] out = decodeBounded("gzinflate", in, PatternSubstitution::InflateGZ);
 
                     dynamicReplace(nodeId, "HexLiteral", out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode gzinflate("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -566,17 +654,19 @@ public class PatternSubstitution {
             case "HexLiteral":
                 try {
                     byte[] in = getTokenByte(firstArgument);
-                    byte[] out = DeflateGZ(in);
+                    byte[] out = DeflateGZ(in, decodeLimit());
 
                     dynamicReplace(nodeId, "HexLiteral", out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode gzinflate("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -595,17 +685,19 @@ public class PatternSubstitution {
             case "HexLiteral":
                 try {
                     byte[] in = getTokenByte(firstArgument);
-                    byte[] out = CompressGZ(in);
+                    byte[] out = CompressGZ(in, decodeLimit());
 
                     dynamicReplace(nodeId, "HexLiteral", out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode gzcompress("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -624,17 +716,19 @@ public class PatternSubstitution {
             case "HexLiteral":
                 try {
                     byte[] in = getTokenByte(firstArgument);
-                    byte[] out = UncompressGZ(in);
+                    byte[] out = decodeBounded("gzuncompress", in, PatternSubstitution::UncompressGZ);
 
                     dynamicReplace(nodeId, "HexLiteral", out);
                     return STATUS.DONE;
+                } catch (BudgetExceededException e) {
+                    throw e;
                 } catch (Exception e) {
                     evalErrors.add(e);
                     dynamicReplace(nodeId, "DecodeFailed", "Exception".getBytes());
                 }
                 break;
             case "FunctionCall":
-                return visit_FunctionCall_eval(firstArgument);
+                return require(firstArgument);
             default:
                 evalErrors.add(new ASTDynamicException("Cannot decode gzuncompress("+ast.getType(firstArgument)+")"));
                 dynamicReplace(nodeId, "DecodeFailed", "NoLiteral".getBytes());
@@ -644,13 +738,13 @@ public class PatternSubstitution {
 
     private STATUS applyRule_variable_eval(Integer nodeId) throws ASTDynamicException {
         LOGGER.fine("applyRule_variable_eval");
-        CFGAndDDJsonReader cfgddreader = new CFGAndDDJsonReader();
+        fileDependent = true;
         CFGJsonReader cfgreader = new CFGJsonReader();
         ASTJsonReader astreader = new ASTJsonReader();
         String cfg_json = null, dd_json = null;
         CFGWithDD cfgdd = null;
         AST astdd = ast;
-        String filename = this.filename.replace(".ast.json.gz", "").replace(".ast.json", "");
+        String filename = this.filename.replace(".ast.json.gz", "").replace(".ast.json", "").replace(".ast.bin", "");
         String kitname = filename.substring(2, filename.indexOf("/", 3));
 
         try {
@@ -658,6 +752,8 @@ public class PatternSubstitution {
                 throw new ASTDataflowException("No DD info, requires -idd ");
 
             cfg_json = Paths.get(inDirDd, "/cfg/",filename+".cfg.json").toString();
+            if(new File(Paths.get(inDirDd, "/cfg/",filename+".cfg.bin").toString()).exists()) // Written by FormatForDD -bin
+                cfg_json = Paths.get(inDirDd, "/cfg/",filename+".cfg.bin").toString();
             dd_json  = Paths.get(inDirDd, "/dd/", "kitsDd_"+kitname+".php.cfg.json").toString();
         } catch (Exception  e) {
             evalErrors.add(new ASTDataflowException("Cannot resolve variable - missing file : " + e.getMessage()));
@@ -667,7 +763,13 @@ public class PatternSubstitution {
 
         // Read graphs
         try {
-            cfgdd = cfgddreader.read_cfg(cfg_json, dd_json);
+            dependencies.add(Paths.get(inDirDd, "/cfg/",filename+".cfg.json").toString());
+            dependencies.add(Paths.get(inDirDd, "/cfg/",filename+".cfg.bin").toString());
+            dependencies.add(dd_json);
+            if(pipeline != null)
+                cfgdd = pipeline.getCfgDD(filename, dd_json);
+            if(cfgdd == null)
+                cfgdd = readCfgDD(cfg_json, dd_json);
         } catch (Exception e) {
             evalErrors.add(new ASTDataflowException("Cannot resolve variable - failed to read files : " + e.getMessage()));
             dataflowReplace(nodeId, "DecodeFailed", "CannotReadDDFile".getBytes());
@@ -711,23 +813,51 @@ public class PatternSubstitution {
         if(cfgdd.getType(cfgDDSucc) == null) {
             LOGGER.info("DD outside current CFG, search in includes");
 
-            List<String> include_files = new ArrayList<>();
-            walk(Paths.get(inDirDd, "/cfg/"+kitname).toString(), include_files);
-            for(String include_file : include_files) {
-                try {
-                    CFG inc_cfg = cfgreader.read(include_file);
-                    if (inc_cfg.getType(cfgDDSucc) != null) {
-                        LOGGER.info("DD found in " + include_file);
-                        cfgdd.importSubGraph(inc_cfg, inc_cfg.getRoot());
-                        /*for(Integer entryId : inc_cfg.getAllFuncEntryNode()) // Handle func's CFG ?
-                            cfgdd.importSubTree(inc_cfg, entryId);*/
-                        String f = inc_cfg.getFilename().substring(2);
-                        f = f.substring(f.indexOf("/"));
-                        astdd = astreader.read(Paths.get(inDirAst, kitname+f + ".ast.json.gz").toString());
+            String kitDir = Paths.get(inDirDd, "/cfg/"+kitname).toString();
+            dependencies.add(new File(kitDir, CFGNodeIndex.INDEX_FILENAME).getPath());
+            List<String> candidates = (pipeline != null ? pipeline.getNodeIndex() : getCfgNodeIndex(kitDir)).lookup(cfgDDSucc);
+            Set<String> tried = new HashSet<>();
+            for(int pass = 0 ; pass < 2 && cfgdd.getType(cfgDDSucc) == null ; pass++) {
+                if(pass == 1) { // No indexed file has the node, the index may miss CFGs written after it
+                    CFGNodeIndex rebuilt = rebuildCfgNodeIndex(kitDir);
+                    if(rebuilt == null)
                         break;
+                    candidates = rebuilt.lookup(cfgDDSucc);
+                }
+                for(String include : candidates) {
+                    if(!tried.add(include))
+                        continue;
+                    String include_file = Paths.get(kitDir, include).toString();
+                    if(!KitPipeline.isReadable(include_file)) {
+                        LOGGER.warning("Include CFG not readable : " + include_file);
+                        continue;
+                    }
+                    dependencies.add(include_file);
+                    try {
+                        CFG inc_cfg = pipeline != null ? pipeline.getIndexedCfg(include) : null;
+                        if(inc_cfg == null)
+                            inc_cfg = cfgreader.read(include_file);
+                        if (inc_cfg.getType(cfgDDSucc) != null) {
+                            LOGGER.info("DD found in " + include_file);
+                            String f = inc_cfg.getFilename().substring(2);
+                            f = f.substring(f.indexOf("/"));
+                            String astFile = KitPipeline.astFile(inDirAst, kitname+f);
+                            if(astFile == null)
+                                throw new ASTDataflowException("Include outside of the AST directory : " + inc_cfg.getFilename());
+                            dependencies.add(astFile);
+                            AST inc_ast = pipeline != null ? pipeline.getAst("./" + kitname+f) : null;
+                            if(inc_ast == null)
+                                inc_ast = astreader.read(astFile);
+                            astdd = inc_ast;
+                            cfgdd = new CFGWithDD(cfgdd); // Copy on write, the cached graph is shared by every lookup
+                            cfgdd.importSubGraph(inc_cfg, inc_cfg.getRoot());
+                            /*for(Integer entryId : inc_cfg.getAllFuncEntryNode()) // Handle func's CFG ?
+                                cfgdd.importSubTree(inc_cfg, entryId);*/
+                            break;
+                        }
+                    } catch (Exception e) {
+                        LOGGER.warning("Cannot read " + include_file + " : " + e.getMessage());
                     }
-                } catch (Exception e) {
-                    LOGGER.warning("Cannot read " + include_file + " : " + e.getMessage());
                 }
             }
 
@@ -756,7 +886,11 @@ public class PatternSubstitution {
         List<Integer> children = new ArrayList<>(ast.getChildren(parent));
         ast.deleteSubTree(nodeId);
 
+        int size = ast.getNodeIds().size();
         Integer subTree = ast.importSubGraph(astdd, astDDSucc, astSub.getDataDependency());
+        budget.addNodes(ast.getNodeIds().size() - size);
+        if(!stuck.isEmpty())
+            forgetStuck(subTree); // Imported nodes may reuse the ids of deleted ones
         astSub.addDataflowResolution(astSub.getFirstParent(nodeId), ast, subTree);
 
         // Rebuild edges in order
@@ -772,16 +906,221 @@ public class PatternSubstitution {
         return STATUS.CHANGE;
     }
 
-    private static void walk( String path, List<String> filelist ) {
-        File root = new File( path );
-        File[] list = root.listFiles();
-        if (list == null) return;
+    private void forgetStuck(Integer rootId) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(rootId);
+        while(!stack.isEmpty()) {
+            Integer nodeId = stack.pop();
+            stuck.remove(nodeId);
+            if(ast.getChildren(nodeId) != null)
+                ast.getChildren(nodeId).forEach(stack::push);
+        }
+    }
 
-        for ( File f : list ) {
-            if ( f.isDirectory() )
-                walk( f.getPath(), filelist );
-            else
-                filelist.add(f.getPath());
+    private static CFGWithDD readCfgDD(String cfg_json, String dd_json) throws IOException {
+        Pair<String, String> key = new Pair<>(ContentCache.fileKey(cfg_json), ContentCache.fileKey(dd_json));
+        CFGWithDD cfgdd = cfgDDCache.get(key);
+        if(cfgdd == null) {
+            cfgdd = (new CFGAndDDJsonReader()).read_cfg(cfg_json, dd_json);
+            cfgDDCache.put(key, cfgdd);
+        }
+        return cfgdd; // Shared and read-only, copied before an included CFG is imported
+    }
+
+    // Kit graphs and indexes read again on next use, e.g. after the kit is translated again
+    public static void invalidateKitCaches() {
+        cfgDDCache.clear();
+        synchronized (cfgNodeIndexes) {
+            cfgNodeIndexes.clear();
+            cfgNodeIndexesChecked.clear();
+        }
+        KitPipeline.invalidate();
+    }
+
+    public static LRUCache<Pair<String, String>, CFGWithDD> getCfgDDCache() {
+        return cfgDDCache;
+    }
+    public static ContentCache<byte[]> getDecodedCache() {
+        return decodedCache;
+    }
+    public static ContentCache<ParsedPayload> getParsedCache() {
+        return parsedCache;
+    }
+    public static ResolutionBudget getBudget() {
+        return budgetLimits;
+    }
+    public static void setBudget(ResolutionBudget limits) {
+        budgetLimits = limits;
+    }
+
+    // Evicted payloads are kept in dir, only the ones resolved without error for parsed payloads
+    public static void setPayloadSpill(File dir) {
+        decodedCache.setSpill(new File(dir, "decoded"), ".payload", new ContentCache.Spill<byte[]>() {
+            public boolean write(File file, byte[] value) throws IOException {
+                java.nio.file.Files.write(file.toPath(), value);
+                return true;
+            }
+            public byte[] read(File file) throws IOException {
+                return java.nio.file.Files.readAllBytes(file.toPath());
+            }
+        });
+        parsedCache.setSpill(new File(dir, "parsed"), ".astdyn" + GraphBinaryReader.EXTENSION, new ContentCache.Spill<ParsedPayload>() {
+            public boolean write(File file, ParsedPayload value) throws IOException {
+                if(value.failure != null || !value.errors.isEmpty())
+                    return false;
+                new ASTDynamicBinaryPrint(value.dynamicAst, file).print();
+                java.nio.file.Files.write(usageFile(file).toPath(),
+                        (value.decodedBytes + " " + value.nodes + " " + value.depth).getBytes(StandardCharsets.UTF_8));
+                return true;
+            }
+            public ParsedPayload read(File file) throws IOException {
+                String[] usage = new String(java.nio.file.Files.readAllBytes(usageFile(file).toPath()), StandardCharsets.UTF_8).split(" ");
+                ParsedPayload parsed = new ParsedPayload(new ASTDynamicJsonReader().read(file.getPath()), new ArrayList<>(), true);
+                parsed.decodedBytes = Long.parseLong(usage[0]);
+                parsed.nodes = Long.parseLong(usage[1]);
+                parsed.depth = Integer.parseInt(usage[2]);
+                return parsed;
+            }
+            private File usageFile(File file) { // Budget used by the payload
+                return new File(file.getPath() + ".usage");
+            }
+        });
+    }
+
+    // Parse and resolve an eval string, or reuse the result of an identical string
+    private ParsedPayload resolvePayload(String payload) {
+        String key = ContentCache.hash(payload.getBytes(StandardCharsets.UTF_8));
+        ParsedPayload parsed = parsedCache.get(key);
+        if(parsed != null) {
+            LOGGER.fine("Reuse resolved payload " + key);
+            budget.checkDepth(depth + parsed.depth);
+            budget.addDecodedBytes(parsed.decodedBytes);
+            budget.addNodes(parsed.nodes);
+            payloadDepth = Math.max(payloadDepth, parsed.depth);
+            return parsed;
+        }
+        parsed = parsePayload(payload);
+        payloadDepth = Math.max(payloadDepth, parsed.depth);
+        if(parsed.cacheable)
+            parsedCache.put(key, parsed);
+        else
+            fileDependent = true;
+        return parsed;
+    }
+
+    // Budget used by the nested resolution is recorded on the result, for the files reusing it
+    private ParsedPayload parsePayload(String payload) {
+        budget.checkDepth(depth + 1);
+        long decodedBytes = budget.getDecodedBytes();
+        long nodes = budget.getNodes();
+        try {
+            AST newAST = StringParser.parse(payload);
+            budget.addNodes(newAST.getNodeIds().size());
+            ParsedPayload parsed;
+            if(newAST.getTypeTable().keySet().size() > 500) { // Probably a web shell, stop looking for eval
+                LOGGER.info("##WEBSHELL DETECTED##");
+                parsed = new ParsedPayload(new ASTDynamic(newAST), new ArrayList<>(), true);
+            }
+            else {
+                PatternSubstitution substitution = new PatternSubstitution();
+                substitution.pipeline = pipeline;
+                substitution.visit(newAST, filename, inDirAst, inDirDd, budget, depth + 1);
+                parsed = new ParsedPayload(substitution.getDynamicAst(), substitution.getEvalErrors(), !substitution.fileDependent);
+                parsed.depth = 1 + substitution.payloadDepth;
+                dependencies.addAll(substitution.dependencies);
+            }
+            parsed.decodedBytes = budget.getDecodedBytes() - decodedBytes;
+            parsed.nodes = budget.getNodes() - nodes;
+            return parsed;
+        } catch (BudgetExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            return new ParsedPayload(null, new ArrayList<>(), "Exception", "Exception occurred while parsing string - " + e.getMessage(), true);
+        } catch (Throwable e) { // Out of memory or stack may not happen again, not cached
+            return new ParsedPayload(null, new ArrayList<>(), "Error", "Error occurred while parsing string - " + e.getMessage(), false);
+        }
+    }
+
+    // Decoding of payload bytes, cached by decoder and input
+    private interface Decoder<E extends Exception> {
+        byte[] decode(byte[] in) throws E;
+    }
+    private interface BoundedDecoder {
+        byte[] decode(byte[] in, long limit) throws IOException;
+    }
+    // Output bounded by the decoded bytes left in the budget, going over stops the file
+    private byte[] decodeBounded(String decoder, byte[] in, BoundedDecoder decode) throws IOException {
+        long limit = decodeLimit();
+        try {
+            return decodeCached(decoder, in, data -> decode.decode(data, limit));
+        } catch (Zlib.OutputLimitException e) {
+            if(limit == budget.getRemainingDecodedBytes())
+                budget.addDecodedBytes(limit + 1);
+            throw e;
+        }
+    }
+    private long decodeLimit() {
+        return Math.min(budget.getRemainingDecodedBytes(), Integer.MAX_VALUE - 8); // Largest byte[]
+    }
+    private static <E extends Exception> byte[] decodeCached(String decoder, byte[] in, Decoder<E> decode) throws E {
+        String key = ContentCache.hash(decoder.getBytes(StandardCharsets.UTF_8), in);
+        byte[] out = decodedCache.get(key);
+        if(out == null) {
+            out = decode.decode(in);
+            decodedCache.put(key, out);
+        }
+        return out; // Shared with the cache and the nodes, never modified
+    }
+
+    // Node id index of the kit CFGs, read from FormatForDD output or built once on first use
+    private static CFGNodeIndex getCfgNodeIndex(String kitDir) {
+        synchronized (cfgNodeIndexes) {
+            CFGNodeIndex index = cfgNodeIndexes.get(kitDir);
+            if(index != null)
+                return index;
+
+            File indexFile = new File(kitDir, CFGNodeIndex.INDEX_FILENAME);
+            if(indexFile.exists()) {
+                try {
+                    index = CFGNodeIndex.read(indexFile.getPath());
+                } catch (Exception e) {
+                    LOGGER.warning("Cannot read " + indexFile + " : " + e.getMessage());
+                }
+            }
+            if(index == null) {
+                LOGGER.info("Build CFG node index of " + kitDir);
+                index = CFGNodeIndex.build(kitDir);
+                cfgNodeIndexesChecked.add(kitDir);
+                try {
+                    index.write(indexFile.getPath());
+                } catch (IOException e) {
+                    LOGGER.warning("Cannot write " + indexFile + " : " + e.getMessage());
+                }
+            }
+            cfgNodeIndexes.put(kitDir, index);
+            return index;
+        }
+    }
+
+    // Index built again from the CFG files if one was written after the current index, else null
+    // The kit is checked once, later misses of the same kit only probe the checked set
+    private static CFGNodeIndex rebuildCfgNodeIndex(String kitDir) {
+        synchronized (cfgNodeIndexes) {
+            if(!cfgNodeIndexesChecked.add(kitDir))
+                return null;
+            CFGNodeIndex index = cfgNodeIndexes.get(kitDir);
+            if(index != null && !CFGNodeIndex.changedSince(kitDir, index.getTimestamp()))
+                return null;
+            LOGGER.info("Rebuild stale CFG node index of " + kitDir);
+            index = CFGNodeIndex.build(kitDir);
+            File indexFile = new File(kitDir, CFGNodeIndex.INDEX_FILENAME);
+            try {
+                index.write(indexFile.getPath());
+            } catch (IOException e) {
+                LOGGER.warning("Cannot write " + indexFile + " : " + e.getMessage());
+            }
+            cfgNodeIndexes.put(kitDir, index);
+            return index;
         }
     }
 
@@ -822,59 +1161,29 @@ public class PatternSubstitution {
         return out;
     }
 
-    protected static byte[] InflateGZ(byte[] str) throws IOException { // gzinflate
-        InputStream inflInstream = new InflaterInputStream(
-                new ByteArrayInputStream(str),
-                new Inflater(true)
-        );
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        shovelInToOut(inflInstream, outputStream);
-        return outputStream.toByteArray();
+    protected static byte[] InflateGZ(byte[] str, long limit) throws IOException { // gzinflate
+        return Zlib.inflate(str, true, limit);
     }
 
-    protected static byte[] DeflateGZ(byte[] str) throws IOException { // gzdeflate
-        InputStream deflInstream = new DeflaterInputStream(
-                new ByteArrayInputStream(str),
-                new Deflater()
-        );
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        shovelInToOut(deflInstream, outputStream);
-        return outputStream.toByteArray();
-    }
-
-    protected static byte[] UncompressGZ(byte[] str) throws IOException { // gzuncompress
-        InputStream bIn = new ByteArrayInputStream(str);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        InflaterInputStream in = new InflaterInputStream(bIn);
-        shovelInToOut(in, out);
-        return out.toByteArray();
+    protected static byte[] DeflateGZ(byte[] str, long limit) throws IOException { // gzdeflate
+        return Zlib.deflate(str, limit);
     }
 
-    protected static byte[] CompressGZ(byte[] str) throws IOException { // gzcompress
-        InputStream in = new ByteArrayInputStream(str);
-        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-        DeflaterOutputStream out = new DeflaterOutputStream(bOut);
-        shovelInToOut(in, out);
-        return bOut.toByteArray();
+    protected static byte[] UncompressGZ(byte[] str, long limit) throws IOException { // gzuncompress
+        return Zlib.inflate(str, false, limit);
     }
 
-
-
-    // Helper function
-    private static void shovelInToOut(InputStream in, OutputStream out) throws IOException
-    {
-        byte[] buffer = new byte[1024];
-        int len;
-        while((len = in.read(buffer)) > 0) {
-            out.write(buffer, 0, len);
-        }
+    protected static byte[] CompressGZ(byte[] str, long limit) throws IOException { // gzcompress
+        return Zlib.deflate(str, limit);
     }
 
 
-    private void replaceSubTreeByNode(Integer rootId, String type, byte[] image) {
+    private void replaceSubTreeByNode(Integer rootId, String type, byte[] image, long decodedBytes) {
         Integer parent = ast.getParent(rootId).get(0);
         List<Integer> childParent = new ArrayList<>(ast.getChildren(parent));
 
+        if(image != null && !type.endsWith("Failed"))
+            budget.addDecodedBytes(decodedBytes);
         ast.deleteSubTree(rootId);
         ast.setNodeType(rootId, type);
         if(image != null)
@@ -886,28 +1195,36 @@ public class PatternSubstitution {
             ast.addEdge(parent, childId);
     }
     private void dataflowReplace(Integer rootId, String type, byte[] image) {
-        replaceSubTreeByNode(rootId, type, image);
+        replaceSubTreeByNode(rootId, type, image, image == null ? 0 : image.length);
         astSub.addDataflowResolution(astSub.getFirstParent(rootId), ast, rootId);
     }
     private void dynamicReplace(Integer rootId, String type, byte[] image) {
-        replaceSubTreeByNode(rootId, type, image);
+        dynamicReplace(rootId, type, image, image == null ? 0 : image.length);
+    }
+    private void dynamicReplace(Integer rootId, String type, byte[] image, long decodedBytes) {
+        replaceSubTreeByNode(rootId, type, image, decodedBytes);
         astSub.addDynamicResolution(astSub.getFirstParent(rootId), ast, rootId);
     }
 
 
 
     // Helper method to integrate binary data (byte[]) to the AST (as HexLiteral node)
+    // HexLiteral nodes hold the raw bytes, the hex string image is only built by the writers
     // encodeHexString takes binary (byte[]) and return a string "0x..." (to be used as an image of a HexLiteral node)
     // decodeHexString takes a string "0x..." and convert the hexadecimal information to a binary array byte[]
 
     private byte[] getTokenByte(Integer nodeId) {
         if(ast.getType(nodeId).equals("HexLiteral"))
-            return decodeHexString(ast.getImage(nodeId));
+            return getHexByte(nodeId);
         return ast.getImage(nodeId).getBytes();
     }
+    private byte[] getHexByte(Integer nodeId) { // Bytes of a decoded payload, or hex image read from a file
+        byte[] bytes = ast.getBytes(nodeId);
+        return (bytes != null) ? bytes : decodeHexString(ast.getImage(nodeId));
+    }
     private void setTokenByte(Integer nodeId, byte[] data) {
         if(ast.getType(nodeId).equals("HexLiteral"))
-            ast.setNodeImage(nodeId, encodeHexString(data));
+            ast.setNodeBytes(nodeId, data);
         else
             ast.setNodeImage(nodeId, new String(data));
     }
@@ -920,11 +1237,7 @@ public class PatternSubstitution {
     }
 
     public static String encodeHexString(byte[] byteArray) {
-        StringBuilder hexStringBuilder = new StringBuilder();
-        for (int i = 0; i < byteArray.length; i++) {
-            hexStringBuilder.append(byteToHex(byteArray[i]));
-        }
-        return hexStringBuilder.toString();
+        return Graph.encodeHex(byteArray);
     }
 
     public static byte hexToByte(String hexString) {
@@ -943,11 +1256,32 @@ public class PatternSubstitution {
 
         byte[] bytes = new byte[hexString.length() / 2];
         for (int i = 0; i < hexString.length(); i += 2) {
-            bytes[i / 2] = hexToByte(hexString.substring(i, i + 2));
+            int firstDigit = Character.digit(hexString.charAt(i), 16);
+            int secondDigit = Character.digit(hexString.charAt(i + 1), 16);
+            if(firstDigit == -1 || secondDigit == -1)
+                throw new IllegalArgumentException("Invalid Hexadecimal Character: "+ hexString.substring(i, i + 2));
+            bytes[i / 2] = (byte) ((firstDigit << 4) + secondDigit);
         }
         return bytes;
     }
 
+    public int getIterations() {
+        return iterations;
+    }
+
+    // Files read by the dataflow rules, the file itself excepted, missing ones included
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+    public int getMaxWorklist() {
+        return maxWorklist;
+    }
+
+    // Set before visit, the nested payloads use the same kit
+    public void setPipeline(KitPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public boolean isEvalFound() {
         return evalFound;
     }
@@ -0,0 +1,35 @@
+package org.polymtl.codeanalysis.writer;
+
+import org.polymtl.codeanalysis.model.AST;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Same records as ASTJsonPrint, written in the binary graph format
+public class ASTBinaryPrint extends ASTJsonPrint {
+    private final GraphBinaryWriter out;
+
+    public ASTBinaryPrint(AST ast, File f) throws FileNotFoundException {
+        out = new GraphBinaryWriter(f);
+        this.ast = ast;
+    }
+
+    @Override
+    protected void print(Object... args) {
+        out.record(args);
+    }
+
+    @Override
+    public void print() {
+        visit(); // Dictionary pass
+        out.startRecords();
+        visit();
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.polymtl.codeanalysis.writer;
+
+import org.polymtl.codeanalysis.model.ASTDynamic;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Same records as ASTDynamicJsonPrint, written in the binary graph format
+public class ASTDynamicBinaryPrint extends ASTDynamicJsonPrint {
+    private final GraphBinaryWriter out;
+
+    public ASTDynamicBinaryPrint(ASTDynamic ast, File f) throws FileNotFoundException {
+        super(ast);
+        out = new GraphBinaryWriter(f);
+    }
+
+    @Override
+    protected void print(Object... args) {
+        out.record(args);
+    }
+
+    @Override
+    public void print() {
+        visit(); // Dictionary pass
+        out.startRecords();
+        visit();
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.ASTDynamic;
 import org.polymtl.codeanalysis.model.defsInt;
 
@@ -12,30 +11,34 @@ public class ASTDynamicJsonPrint implements Printer {
     private PrintWriter writer = null;
     private ASTDynamic ast = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public ASTDynamicJsonPrint(ASTDynamic ast, File f) throws FileNotFoundException {
-        writer = new PrintWriter(f);
+        writer = JsonRecordWriter.open(f);
+        this.ast = ast;
+    }
+    public ASTDynamicJsonPrint(ASTDynamic ast, PrintWriter pw) {
+        writer = pw;
+        this.ast = ast;
+    }
+    protected ASTDynamicJsonPrint(ASTDynamic ast) {
         this.ast = ast;
     }
 
-    private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
+    protected void print(Object... args) {
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
-
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visit();
         writer.write("\n]\n");
         writer.flush();
@@ -48,8 +51,8 @@ public class ASTDynamicJsonPrint implements Printer {
             print("filename", ast.getFilename());
         for(Integer key : ast.getNodeIds()) {
             print("type", key, ast.getType(key));
-            if(ast.getImage(key) != null)
-                print("image", key, ast.getImage(key));
+            if(ast.hasImage(key))
+                print("image", key, ast.getImageOrBytes(key));
             if(ast.getEvalString(key) != null)
                 print("eval_code", key, ast.getEvalString(key));
             if(ast.getPatternsMatched(key) != null)
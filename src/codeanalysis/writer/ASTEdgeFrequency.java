@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.exceptions.ASTJsonException;
 import org.polymtl.codeanalysis.model.Graph;
 import org.polymtl.codeanalysis.util.Pair;
@@ -15,13 +14,15 @@ public class ASTEdgeFrequency implements Printer  {
     protected Map<Integer, String> compIdTable = new HashMap<>();
     protected Graph tree;
     private PrintWriter writer = null;
+    private JsonRecordWriter records = null;
     //private int comp_n = 0;
     //static final private List<String> listComp = Arrays.asList("CompoundStatement", "Block", "StartOfFunction");
     private List<Integer> visited = null;
 
     public ASTEdgeFrequency(Graph parAstTable, File f) throws FileNotFoundException {
         tree = parAstTable;
-        writer = new PrintWriter(f);
+        writer = JsonRecordWriter.open(f);
+        records = new JsonRecordWriter(writer);
     }
 
     public Map<Pair<String, String>, Integer> getEdgeFreqTable() {
@@ -33,7 +34,8 @@ public class ASTEdgeFrequency implements Printer  {
         // edgeFreq edgestartnode edgeendnode freq
         writer.write("[\n");
         getEdgeFreqTable().forEach((k,v) -> {
-            writer.write("  "+(new JSONArray(Arrays.asList("edgeFreq", k.getKey(), k.getValue(), v))).toString()+",\n");
+            records.write("edgeFreq", k.getKey(), k.getValue(), v);
+            writer.write(",\n");
         });
         writer.write("]\n");
         writer.flush();
@@ -3,7 +3,6 @@ package org.polymtl.codeanalysis.writer;
 import org.polymtl.codeanalysis.util.Pair;
 import org.polymtl.codeanalysis.model.CFG;
 import org.polymtl.codeanalysis.model.Graph;
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.exceptions.ASTJsonException;
 
 import java.io.File;
@@ -16,6 +15,7 @@ public class ASTEdgeList implements Printer  {
     protected Map<Integer, String> compIdTable = new HashMap<>();
     protected Graph tree;
     private PrintWriter writer = null;
+    private JsonRecordWriter records = null;
     //private int comp_n = 0;
     //static final private List<String> listComp = Arrays.asList("CompoundStatement", "Block", "StartOfFunction");
     private List<Integer> visited = null;
@@ -24,21 +24,21 @@ public class ASTEdgeList implements Printer  {
     public ASTEdgeList(Graph parAstTable, boolean token, File f) throws FileNotFoundException {
         tree = parAstTable;
         showToken = token;
-        writer = new PrintWriter(f);
+        writer = JsonRecordWriter.open(f);
     }
 
     private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg.toString());
-        }
-        writer.write("  "+(new JSONArray(array)).toString()+",\n");
+        for (int i = 0 ; i < args.length ; i++)
+            args[i] = args[i].toString();
+        records.write(args);
+        writer.write(",\n");
     }
 
 
     @Override
     public void print() {
         visited = new ArrayList<>();
+        records = new JsonRecordWriter(writer);
         writer.write("[\n");
         visit(tree.getRoot());
         writer.write("]\n");
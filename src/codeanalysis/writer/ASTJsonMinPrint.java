@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.AST;
 import org.polymtl.codeanalysis.model.defsInt;
 
@@ -12,30 +11,27 @@ public class ASTJsonMinPrint implements Printer {
     private PrintWriter writer = null;
     private AST ast = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public ASTJsonMinPrint(AST ast, File f) throws FileNotFoundException {
-        writer = new PrintWriter(f);
+        writer = JsonRecordWriter.open(f);
         this.ast = ast;
     }
 
     private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
-
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visit();
         writer.write("\n]\n");
         writer.flush();
@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.AST;
 import org.polymtl.codeanalysis.model.defsInt;
 
@@ -12,33 +11,30 @@ public class ASTJsonPrint implements Printer {
     protected PrintWriter writer = null;
     protected AST ast = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public ASTJsonPrint(AST ast, File f) throws FileNotFoundException {
-        writer = new PrintWriter(f);
+        writer = JsonRecordWriter.open(f);
         this.ast = ast;
     }
 
     protected ASTJsonPrint() {
     }
 
-    private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
+    protected void print(Object... args) {
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
-
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visit();
         writer.write("\n]\n");
         writer.flush();
@@ -51,8 +47,8 @@ public class ASTJsonPrint implements Printer {
             print("filename", ast.getFilename());
         for(Integer key : ast.getNodeIds()) {
             print("type", key, ast.getType(key));
-            if(ast.getImage(key) != null)
-                print("image", key, ast.getImage(key));
+            if(ast.hasImage(key))
+                print("image", key, ast.getImageOrBytes(key));
             if(ast.getScopeId(key) != null)
                 print("scope_id", key, ast.getScopeId(key));
             if(ast.getVarId(key) != null)
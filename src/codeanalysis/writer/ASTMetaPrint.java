@@ -14,6 +14,7 @@ import java.util.List;
 
 public class ASTMetaPrint implements Printer {
     private PrintWriter writer = null;
+    private JsonRecordWriter records = null;
     private FileReader reader = null;
     private AST ast = null;
     static final String[] types = {
@@ -149,16 +150,14 @@ public class ASTMetaPrint implements Printer {
 
 
     public ASTMetaPrint(AST ast, File fOut) throws FileNotFoundException {
-        writer = new PrintWriter(fOut);
+        writer = JsonRecordWriter.open(fOut);
+        records = new JsonRecordWriter(writer);
         this.ast = ast;
     }
 
     private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
-        writer.write("  "+(new JSONArray(array)).toString()+",\n");
+        records.write(args);
+        writer.write(",\n");
     }
 
     private void print(JSONArray args) {
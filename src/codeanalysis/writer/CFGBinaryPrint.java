@@ -0,0 +1,35 @@
+package org.polymtl.codeanalysis.writer;
+
+import org.polymtl.codeanalysis.model.CFG;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Same records as CFGJsonPrint, written in the binary graph format
+public class CFGBinaryPrint extends CFGJsonPrint {
+    private final GraphBinaryWriter out;
+
+    public CFGBinaryPrint(CFG cfg, File f) throws FileNotFoundException {
+        super(cfg);
+        out = new GraphBinaryWriter(f);
+    }
+
+    @Override
+    protected void print(Object... args) {
+        out.record(args);
+    }
+
+    @Override
+    public void print() {
+        visit(); // Dictionary pass
+        out.startRecords();
+        visit();
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
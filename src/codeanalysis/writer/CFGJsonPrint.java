@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.CFG;
 import org.polymtl.codeanalysis.model.defsInt;
 
@@ -12,32 +11,33 @@ public class CFGJsonPrint implements Printer {
     private PrintWriter writer = null;
     private CFG cfg = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public CFGJsonPrint(CFG cfg, PrintWriter pw) {
         writer = pw;
         this.cfg = cfg;
     }
     public CFGJsonPrint(CFG cfg, File f) throws FileNotFoundException {
-        this(cfg, new PrintWriter(f));
+        this(cfg, JsonRecordWriter.open(f));
+    }
+    protected CFGJsonPrint(CFG cfg) {
+        this.cfg = cfg;
     }
 
-    private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
+    protected void print(Object... args) {
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visit();
         writer.write("\n]\n");;
         writer.flush();
@@ -50,8 +50,8 @@ public class CFGJsonPrint implements Printer {
             print("filename", cfg.getFilename());
         for(Integer key : cfg.getNodeIds()) {
             print("type", key, cfg.getType(key));
-            if(cfg.getImage(key) != null)
-                print("image", key, cfg.getImage(key));
+            if(cfg.hasImage(key))
+                print("image", key, cfg.getImageOrBytes(key));
             if(cfg.getScopeId(key) != null)
                 print("scope_id", key, cfg.getScopeId(key));
             if(cfg.getVarId(key) != null)
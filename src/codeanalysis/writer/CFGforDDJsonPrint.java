@@ -6,7 +6,6 @@
 
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.CFGforDD;
 
 import java.io.File;
@@ -20,32 +19,30 @@ public class CFGforDDJsonPrint implements Printer {
     private CFGforDD cfg = null;
     private List<Integer> visited = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public CFGforDDJsonPrint(CFGforDD cfg, PrintWriter pw) throws FileNotFoundException {
         writer = pw;
         this.cfg = cfg;
     }
     public CFGforDDJsonPrint(CFGforDD cfg, File f) throws FileNotFoundException {
-        this(cfg, new PrintWriter(f));
+        this(cfg, JsonRecordWriter.open(f));
     }
 
     private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visited = new ArrayList<>();
         for(String key : cfg.getAttr().keySet())
             print("cfg_attr", key, cfg.getAttr().get(key));
@@ -1,6 +1,5 @@
 package org.polymtl.codeanalysis.writer;
 
-import org.json.JSONArray;
 import org.polymtl.codeanalysis.model.*;
 
 import java.io.File;
@@ -11,32 +10,30 @@ public class DOMJsonPrint implements Printer {
     private PrintWriter writer = null;
     private Dominator dom = null;
     private boolean firstline = true;
+    private JsonRecordWriter records = null;
 
     public DOMJsonPrint(Dominator dom, PrintWriter pw) {
         writer = pw;
         this.dom = dom;
     }
     public DOMJsonPrint(Dominator dom, File f) throws FileNotFoundException {
-        this(dom, new PrintWriter(f));
+        this(dom, JsonRecordWriter.open(f));
     }
 
     private void print(Object... args) {
-        JSONArray array = new JSONArray();
-        for (Object arg : args) {
-            array.put(arg);
-        }
         if(firstline)
             firstline = false;
         else
             writer.write(",\n");
 
-        writer.write("  "+(new JSONArray(array)).toString());
+        records.write(args);
     }
 
     @Override
     public void print() {
         writer.write("[\n");
         firstline = true;
+        records = new JsonRecordWriter(writer);
         visit();
         writer.write("\n]\n");;
         writer.flush();
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.writer;
+
+import org.polymtl.codeanalysis.reader.GraphBinaryReader;
+
+import java.io.*;
+import java.util.*;
+
+import static org.polymtl.codeanalysis.reader.GraphBinaryReader.*;
+
+// Writer of the binary graph files, format described in GraphBinaryReader
+// Records are grouped in blocks by name and field kinds, so every edge kind gets its own block
+// The records are given twice : the first pass counts them and builds the dictionary, after startRecords
+// the second pass encodes each record in the bytes of its block, only the encoded blocks are kept until close
+public class GraphBinaryWriter implements Closeable {
+    private static class Block {
+        final String name;
+        final byte[] kinds; // KIND_INT, KIND_STRING, KIND_BYTES or KIND_NULL, strings may turn to KIND_DICT in startRecords
+        final List<Set<String>> distinct = new ArrayList<>(); // Per field, strings in first seen order
+        int count = 0;
+        int written = 0;
+        final int[] previous;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        Block(String name, byte[] kinds) {
+            this.name = name;
+            this.kinds = kinds;
+            this.previous = new int[kinds.length];
+            for(byte kind : kinds)
+                distinct.add(kind == KIND_STRING ? new LinkedHashSet<>() : null);
+        }
+    }
+
+    private final OutputStream out;
+    private final Map<String, Block> blocks = new LinkedHashMap<>();
+    private final StringBuilder signature = new StringBuilder();
+    private Map<String, Integer> dictionary = null; // Set by startRecords
+
+    public GraphBinaryWriter(File f) throws FileNotFoundException {
+        this(new FileOutputStream(f));
+    }
+    public GraphBinaryWriter(OutputStream stream) {
+        out = new BufferedOutputStream(stream, 1 << 16);
+    }
+
+    // Same arguments as the JSON records: a name followed by Integer, String, byte[] (binary image) or null fields
+    public void record(Object... args) {
+        if(args.length == 0 || !(args[0] instanceof String))
+            throw new IllegalArgumentException("Record name expected");
+        if(args.length > 8)
+            throw new IllegalArgumentException("Too many fields in record " + args[0]);
+        signature.setLength(0);
+        signature.append(args[0]).append('/');
+        for(int i = 1 ; i < args.length ; i++)
+            signature.append((char) ('0' + kindOf(args[i])));
+
+        Block block = blocks.get(signature.toString());
+        if(dictionary == null) {
+            if(block == null) {
+                byte[] kinds = new byte[args.length - 1];
+                for(int i = 1 ; i < args.length ; i++)
+                    kinds[i-1] = kindOf(args[i]);
+                block = new Block((String) args[0], kinds);
+                blocks.put(signature.toString(), block);
+            }
+            block.count++;
+            for(int i = 0 ; i < block.kinds.length ; i++)
+                if(block.distinct.get(i) != null)
+                    block.distinct.get(i).add((String) args[i+1]);
+            return;
+        }
+
+        if(block == null || block.written == block.count)
+            throw new IllegalStateException("Record " + args[0] + " not given in the first pass");
+        block.written++;
+        try {
+            for(int i = 0 ; i < block.kinds.length ; i++) {
+                switch (block.kinds[i]) {
+                    case KIND_INT:
+                        int value = (Integer) args[i+1];
+                        writeVarint(block.data, zigzag(value - block.previous[i]));
+                        block.previous[i] = value;
+                        break;
+                    case KIND_DICT:
+                        writeVarint(block.data, dictionary.get((String) args[i+1]));
+                        break;
+                    case KIND_STRING:
+                        writeString(block.data, (String) args[i+1]);
+                        break;
+                    case KIND_BYTES:
+                        byte[] bytes = (byte[]) args[i+1];
+                        writeVarint(block.data, bytes.length);
+                        block.data.write(bytes);
+                        break;
+                }
+            }
+        } catch (IOException e) { // Not thrown by the in memory block
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte kindOf(Object arg) {
+        if(arg == null)
+            return KIND_NULL;
+        if(arg instanceof Integer)
+            return KIND_INT;
+        if(arg instanceof String)
+            return KIND_STRING;
+        if(arg instanceof byte[])
+            return KIND_BYTES;
+        throw new IllegalArgumentException("Unsupported field type " + arg.getClass().getSimpleName());
+    }
+
+    // End of the first pass
+    public void startRecords() {
+        // Dictionary : record names and the string fields repeating enough, like node types
+        dictionary = new LinkedHashMap<>();
+        for(Block block : blocks.values()) {
+            dictionary.putIfAbsent(block.name, dictionary.size());
+            for(int i = 0 ; i < block.kinds.length ; i++) {
+                Set<String> distinct = block.distinct.get(i);
+                if(distinct == null || distinct.size() * 2 > block.count)
+                    continue;
+                block.kinds[i] = KIND_DICT;
+                for(String s : distinct)
+                    dictionary.putIfAbsent(s, dictionary.size());
+            }
+            block.distinct.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(dictionary == null)
+                startRecords();
+            out.write(GraphBinaryReader.MAGIC);
+            writeVarint(out, VERSION);
+            writeVarint(out, dictionary.size());
+            for(String s : dictionary.keySet())
+                writeString(out, s);
+
+            writeVarint(out, blocks.size());
+            for(Block block : blocks.values()) {
+                if(block.written != block.count)
+                    throw new IllegalStateException("Record " + block.name + " missing in the second pass");
+                writeVarint(out, dictionary.get(block.name));
+                writeVarint(out, block.kinds.length);
+                for(byte kind : block.kinds)
+                    out.write(kind);
+                writeVarint(out, block.count);
+                block.data.writeTo(out);
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeVarint(OutputStream stream, int value) throws IOException {
+        while((value & ~0x7F) != 0) {
+            stream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void writeString(OutputStream stream, String s) throws IOException {
+        writeVarint(stream, s.length());
+        for(int i = 0 ; i < s.length() ; i++)
+            writeVarint(stream, s.charAt(i));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022, all rights reserved.
+ * Copying content is expressly prohibited without prior written permission of the University or the authors.
+ * @author Julien Cassagne <julien.cassagne@polymtl.ca>
+ */
+
+package org.polymtl.codeanalysis.writer;
+
+import org.json.JSONWriter;
+
+import java.io.*;
+import java.util.Arrays;
+
+// Writes the flat records of the JSON graph files, e.g. `  ["type", 12, "Variable"]`, straight to the writer
+// Same text as JSONArray.toString, without building a JSONArray per record
+public class JsonRecordWriter {
+    private static final int FILE_BUFFER_SIZE = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final PrintWriter out;
+    private char[] buffer = new char[256]; // One record, written at once
+
+    public JsonRecordWriter(PrintWriter out) {
+        this.out = out;
+    }
+
+    // Same charset as PrintWriter(File), with a larger buffer
+    public static PrintWriter open(File f) throws FileNotFoundException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f)), FILE_BUFFER_SIZE));
+    }
+
+    // Indented record, the separator is left to the printer
+    public void write(Object... fields) {
+        int length = 0;
+        length = append(length, ' ');
+        length = append(length, ' ');
+        length = append(length, '[');
+        for(int i = 0 ; i < fields.length ; i++) {
+            if(i > 0)
+                length = append(length, ',');
+            length = appendValue(length, fields[i]);
+        }
+        length = append(length, ']');
+        out.write(buffer, 0, length);
+    }
+
+    private int appendValue(int length, Object value) {
+        if(value instanceof String)
+            return appendQuoted(length, (String) value);
+        if(value instanceof Integer)
+            return append(length, value.toString());
+        if(value == null)
+            return append(length, "null");
+        if(value instanceof byte[])
+            return appendHex(length, (byte[]) value);
+        return append(length, JSONWriter.valueToString(value));
+    }
+
+    // Binary image, as the hex string of Graph.getImage
+    private int appendHex(int length, byte[] bytes) {
+        length = append(length, '"');
+        for(byte b : bytes) {
+            length = append(length, HEX[(b >> 4) & 0xF]);
+            length = append(length, HEX[b & 0xF]);
+        }
+        return append(length, '"');
+    }
+
+    // Same escaping as JSONObject.quote
+    private int appendQuoted(int length, String s) {
+        length = append(length, '"');
+        char previous = 0;
+        for(int i = 0 ; i < s.length() ; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    length = append(length, '\\');
+                    length = append(length, c);
+                    break;
+                case '/':
+                    if(previous == '<')
+                        length = append(length, '\\');
+                    length = append(length, c);
+                    break;
+                case '\b': length = append(length, "\\b"); break;
+                case '\t': length = append(length, "\\t"); break;
+                case '\n': length = append(length, "\\n"); break;
+                case '\f': length = append(length, "\\f"); break;
+                case '\r': length = append(length, "\\r"); break;
+                default:
+                    if(c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        length = append(length, "\\u");
+                        length = append(length, HEX[(c >> 12) & 0xF]);
+                        length = append(length, HEX[(c >> 8) & 0xF]);
+                        length = append(length, HEX[(c >> 4) & 0xF]);
+                        length = append(length, HEX[c & 0xF]);
+                    }
+                    else
+                        length = append(length, c);
+            }
+            previous = c;
+        }
+        return append(length, '"');
+    }
+
+    private int append(int length, char c) {
+        if(length == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        buffer[length] = c;
+        return length + 1;
+    }
+    private int append(int length, String s) {
+        if(length + s.length() > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + s.length()));
+        s.getChars(0, s.length(), buffer, length);
+        return length + s.length();
+    }
+}